@@ -0,0 +1,58 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.influxdb;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * Aggregation applied by InfluxDB per time bucket of an aggregated query of the
+ * {@link InfluxDBQueryablePersistenceService}.
+ *
+ * MEAN, MIN and MAX only apply to Number, Dimmer and Rollershutter items, LAST returns the newest value of each
+ * bucket and applies to all items.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public enum InfluxDBAggregation {
+    MEAN("mean"),
+    MIN("min"),
+    MAX("max"),
+    LAST("last");
+
+    private final String function;
+
+    InfluxDBAggregation(String function) {
+        this.function = function;
+    }
+
+    /**
+     * @return name of the InfluxQL function
+     */
+    public String getFunction() {
+        return function;
+    }
+
+    public boolean isNumeric() {
+        return this != LAST;
+    }
+
+    /**
+     * @param numericValues true if the queried item is stored as numbers, false for a query of several items or of
+     *            an item which is not in the registry
+     * @return this aggregation if it applies to the values of the item, LAST otherwise
+     */
+    public InfluxDBAggregation applicableTo(boolean numericValues) {
+        return !isNumeric() || numericValues ? this : LAST;
+    }
+}
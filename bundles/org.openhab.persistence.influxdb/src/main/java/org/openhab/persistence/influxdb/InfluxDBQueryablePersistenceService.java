@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.influxdb;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.persistence.QueryablePersistenceService;
+
+/**
+ * Queries of the InfluxDB persistence service beyond those of a {@link QueryablePersistenceService}.
+ * The service is registered under this interface too, so other bundles can look it up to use them.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public interface InfluxDBQueryablePersistenceService extends QueryablePersistenceService {
+
+    /**
+     * Queries the values aggregated by InfluxDB per time bucket of bucketSeconds, e.g. the hourly mean of a
+     * temperature, so that only one point per bucket is transferred. Buckets without values are omitted. Items
+     * which are not stored as numbers only support {@link InfluxDBAggregation#LAST}, other aggregations fall back to
+     * it. Paging of the filter is not applied to aggregated results. Without a begin date, the query covers the
+     * 1000 buckets before the end date, or before now.
+     *
+     * @param filter the item, time range, state condition and ordering of the query
+     * @param aggregation the aggregation applied per bucket
+     * @param bucketSeconds the resolution of the result, a value &lt;= 0 queries the raw values
+     * @return the aggregated values, with the start of their bucket as timestamp
+     */
+    Iterable<HistoricItem> query(FilterCriteria filter, InfluxDBAggregation aggregation, int bucketSeconds);
+
+    /**
+     * Queries the values of several items with one request, e.g. for a dashboard. Each returned series is the
+     * result of the query of one item, so paging and ordering of the filter apply to each item; its item name is
+     * ignored.
+     *
+     * @param itemNames the names of the items to query
+     * @param filter the time range, state condition, ordering and page of the query
+     * @return the values per item name, an empty list for items without values
+     */
+    Map<String, List<HistoricItem>> query(Collection<String> itemNames, FilterCriteria filter);
+
+    /**
+     * Queries the values of all items whose name matches a regular expression with one request, see
+     * {@link #query(Collection, FilterCriteria)}.
+     *
+     * @param itemNameRegex regular expression as supported by InfluxDB, e.g. <code>^Temperature_</code>
+     * @param filter the time range, state condition, ordering and page of the query
+     * @return the values per name of the items which have values
+     */
+    Map<String, List<HistoricItem>> queryMatching(String itemNameRegex, FilterCriteria filter);
+}
@@ -0,0 +1,309 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.influxdb.internal;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.BatchPoints;
+import org.influxdb.dto.Point;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded write buffer for points. Points are queued by {@link InfluxDBPersistenceService} and written by a
+ * dedicated writer thread in batches of at most batchSize points or after flushInterval milliseconds, extended by a
+ * random jitter of up to jitterInterval milliseconds so that several openHAB instances writing to the same server
+ * do not flush at the same time.
+ *
+ * If the queue is full, new points are either dropped (default) or the caller blocks until there is room again,
+ * depending on the configured overflow policy. A batch that could not be written is retried up to retryAttempts
+ * times with an increasing delay before its points are dropped; while a batch is retried new points queue up, so
+ * the overflow policy applies to an unreachable database as well.
+ *
+ * Once the writer is stopped, new points are refused and the points still queued, including those of offers which
+ * were in progress, are written once.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public class InfluxDBBatchWriter implements Runnable, InfluxDBBatchWriterMXBean {
+    public static final String OBJECT_NAME = "org.openhab.persistence.influxdb:type=InfluxDBBatchWriter";
+
+    private static final long RETRY_DELAY = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(InfluxDBBatchWriter.class);
+
+    private final InfluxDB influxDB;
+    private final String dbName;
+    private final String retentionPolicy;
+    private final BlockingQueue<Point> queue;
+    private final int batchSize;
+    private final long flushInterval;
+    private final long jitterInterval;
+    private final boolean blockOnOverflow;
+    private final int retryAttempts;
+    private final Thread writer;
+    private volatile boolean running = true;
+    // offers in progress, stop() waits for them so that no point is queued after the last drain
+    private final AtomicInteger offering = new AtomicInteger();
+
+    private final AtomicLong queuedCnt = new AtomicLong();
+    private final AtomicLong writtenCnt = new AtomicLong();
+    private final AtomicLong droppedCnt = new AtomicLong();
+    private final AtomicLong retriedCnt = new AtomicLong();
+    private final AtomicLong flushCnt = new AtomicLong();
+    private final AtomicLong flushTime = new AtomicLong();
+    private volatile long lastFlushTime;
+    private volatile long maxFlushTime;
+
+    public InfluxDBBatchWriter(InfluxDB influxDB, String dbName, String retentionPolicy, int batchSize,
+            long flushInterval, int bufferLimit, long jitterInterval, boolean blockOnOverflow, int retryAttempts) {
+        this.influxDB = influxDB;
+        this.dbName = dbName;
+        this.retentionPolicy = retentionPolicy;
+        this.queue = new ArrayBlockingQueue<>(bufferLimit);
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.jitterInterval = jitterInterval;
+        this.blockOnOverflow = blockOnOverflow;
+        this.retryAttempts = retryAttempts;
+        this.writer = new Thread(this, "OH-influxdb-writer");
+        this.writer.setDaemon(true);
+    }
+
+    public void start() {
+        logger.debug("start batch writer, batchSize={} flushInterval={} ms jitterInterval={} ms bufferLimit={} "
+                + "blockOnOverflow={} retryAttempts={}", batchSize, flushInterval, jitterInterval,
+                queue.remainingCapacity(), blockOnOverflow, retryAttempts);
+        writer.start();
+        register();
+    }
+
+    /**
+     * Stops the writer thread and tries once to write all points still queued, including those of offers which were
+     * in progress.
+     */
+    public void stop() {
+        running = false;
+        writer.interrupt();
+        try {
+            writer.join(flushInterval + jitterInterval + 5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Point> batch = new ArrayList<>();
+        do {
+            // draining also makes room for offers blocked on a full queue
+            queue.drainTo(batch);
+            flush(batch, 0);
+            batch.clear();
+            Thread.yield();
+        } while (offering.get() > 0 || !queue.isEmpty());
+        unregister();
+        logger.debug("batch writer stopped, queued={} written={} dropped={}", queuedCnt.get(), writtenCnt.get(),
+                droppedCnt.get());
+    }
+
+    /**
+     * Queues a point.
+     *
+     * @return false if the point was dropped because the buffer is full, or refused because the writer is stopped
+     */
+    public boolean offer(Point point) {
+        offering.incrementAndGet();
+        try {
+            if (!running) {
+                return false;
+            }
+            if (queue.offer(point)) {
+                queuedCnt.incrementAndGet();
+                return true;
+            }
+            if (blockOnOverflow) {
+                try {
+                    queue.put(point);
+                    queuedCnt.incrementAndGet();
+                    return true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        } finally {
+            offering.decrementAndGet();
+        }
+        if (droppedCnt.incrementAndGet() % 1000 == 1) {
+            logger.warn("write buffer is full, point dropped. Dropped so far: {}", droppedCnt.get());
+        }
+        return false;
+    }
+
+    @Override
+    public void run() {
+        List<Point> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Point first = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long interval = flushInterval
+                        + (jitterInterval > 0 ? ThreadLocalRandom.current().nextLong(jitterInterval + 1) : 0);
+                long deadline = System.currentTimeMillis() + interval;
+                queue.drainTo(batch, batchSize - batch.size());
+                while (batch.size() < batchSize) {
+                    long wait = deadline - System.currentTimeMillis();
+                    Point point = wait > 0 ? queue.poll(wait, TimeUnit.MILLISECONDS) : null;
+                    if (point == null) {
+                        break;
+                    }
+                    batch.add(point);
+                    queue.drainTo(batch, batchSize - batch.size());
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            }
+            flush(batch, running ? retryAttempts : 0);
+            batch.clear();
+        }
+    }
+
+    private void flush(List<Point> batch, int retries) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        BatchPoints batchPoints = BatchPoints.database(dbName).retentionPolicy(retentionPolicy).build();
+        for (Point point : batch) {
+            batchPoints.point(point);
+        }
+        for (int attempt = 0;; attempt++) {
+            long start = System.currentTimeMillis();
+            try {
+                influxDB.write(batchPoints);
+                recordFlush(System.currentTimeMillis() - start);
+                writtenCnt.addAndGet(batch.size());
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= retries) {
+                    droppedCnt.addAndGet(batch.size());
+                    logger.error("writing {} points failed, dropped: {}", batch.size(), e.getMessage());
+                    return;
+                }
+                retriedCnt.incrementAndGet();
+                logger.debug("writing {} points failed, retry {} of {}: {}", batch.size(), attempt + 1, retries,
+                        e.getMessage());
+            }
+            try {
+                Thread.sleep(RETRY_DELAY * (attempt + 1));
+            } catch (InterruptedException e) {
+                // stopping, the next attempt is the last one
+                running = false;
+                retries = attempt + 1;
+            }
+        }
+    }
+
+    private void recordFlush(long millis) {
+        flushCnt.incrementAndGet();
+        flushTime.addAndGet(millis);
+        lastFlushTime = millis;
+        if (millis > maxFlushTime) {
+            maxFlushTime = millis;
+        }
+    }
+
+    private void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            logger.warn("registering '{}' failed: {}", OBJECT_NAME, e.getMessage());
+        }
+    }
+
+    private void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            logger.debug("unregistering '{}' failed: {}", OBJECT_NAME, e.getMessage());
+        }
+    }
+
+    @Override
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    @Override
+    public long getQueuedCount() {
+        return queuedCnt.get();
+    }
+
+    @Override
+    public long getWrittenCount() {
+        return writtenCnt.get();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return droppedCnt.get();
+    }
+
+    @Override
+    public long getRetriedCount() {
+        return retriedCnt.get();
+    }
+
+    @Override
+    public long getFlushCount() {
+        return flushCnt.get();
+    }
+
+    @Override
+    public long getLastFlushTime() {
+        return lastFlushTime;
+    }
+
+    @Override
+    public long getMaxFlushTime() {
+        return maxFlushTime;
+    }
+
+    @Override
+    public double getAverageFlushTime() {
+        long cnt = flushCnt.get();
+        return cnt == 0 ? 0 : (double) flushTime.get() / cnt;
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.influxdb.internal;
+
+/**
+ * JMX view of the write buffer of the InfluxDB persistence service, registered as
+ * {@value InfluxDBBatchWriter#OBJECT_NAME}.
+ *
+ * @author agent - Initial contribution
+ */
+public interface InfluxDBBatchWriterMXBean {
+
+    int getQueueSize();
+
+    long getQueuedCount();
+
+    long getWrittenCount();
+
+    /**
+     * @return points dropped because the buffer was full or their batch failed after all retries
+     */
+    long getDroppedCount();
+
+    /**
+     * @return failed batch writes that were retried
+     */
+    long getRetriedCount();
+
+    long getFlushCount();
+
+    /**
+     * @return duration of the last successful batch write in milliseconds
+     */
+    long getLastFlushTime();
+
+    long getMaxFlushTime();
+
+    double getAverageFlushTime();
+}
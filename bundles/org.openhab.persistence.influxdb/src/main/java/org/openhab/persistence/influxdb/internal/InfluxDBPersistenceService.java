@@ -15,15 +15,20 @@ package org.openhab.persistence.influxdb.internal;
 import static org.apache.commons.lang.StringUtils.isBlank;
 
 import java.math.BigDecimal;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
@@ -34,18 +39,10 @@ import org.influxdb.dto.Pong;
 import org.influxdb.dto.Query;
 import org.influxdb.dto.QueryResult.Result;
 import org.influxdb.dto.QueryResult.Series;
-import org.openhab.core.items.GroupItem;
+import org.openhab.core.common.registry.RegistryChangeListener;
 import org.openhab.core.items.Item;
 import org.openhab.core.items.ItemNotFoundException;
 import org.openhab.core.items.ItemRegistry;
-import org.openhab.core.library.items.ColorItem;
-import org.openhab.core.library.items.ContactItem;
-import org.openhab.core.library.items.DateTimeItem;
-import org.openhab.core.library.items.DimmerItem;
-import org.openhab.core.library.items.LocationItem;
-import org.openhab.core.library.items.NumberItem;
-import org.openhab.core.library.items.RollershutterItem;
-import org.openhab.core.library.items.SwitchItem;
 import org.openhab.core.library.types.DateTimeType;
 import org.openhab.core.library.types.DecimalType;
 import org.openhab.core.library.types.HSBType;
@@ -53,7 +50,6 @@ import org.openhab.core.library.types.OnOffType;
 import org.openhab.core.library.types.OpenClosedType;
 import org.openhab.core.library.types.PercentType;
 import org.openhab.core.library.types.PointType;
-import org.openhab.core.library.types.StringType;
 import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.FilterCriteria.Ordering;
 import org.openhab.core.persistence.HistoricItem;
@@ -63,6 +59,8 @@ import org.openhab.core.persistence.QueryablePersistenceService;
 import org.openhab.core.persistence.strategy.PersistenceStrategy;
 import org.openhab.core.types.State;
 import org.openhab.core.types.UnDefType;
+import org.openhab.persistence.influxdb.InfluxDBAggregation;
+import org.openhab.persistence.influxdb.InfluxDBQueryablePersistenceService;
 import org.osgi.framework.BundleContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
@@ -88,14 +86,22 @@ import retrofit.RetrofitError;
  * @author Kai Kreuzer - Migration to 3.x
  */
 @NonNullByDefault
-@Component(service = { PersistenceService.class,
-        QueryablePersistenceService.class }, configurationPid = "org.openhab.influxdb", configurationPolicy = ConfigurationPolicy.REQUIRE)
-public class InfluxDBPersistenceService implements QueryablePersistenceService {
+@Component(service = { PersistenceService.class, QueryablePersistenceService.class,
+        InfluxDBQueryablePersistenceService.class }, configurationPid = "org.openhab.influxdb", configurationPolicy = ConfigurationPolicy.REQUIRE)
+public class InfluxDBPersistenceService implements InfluxDBQueryablePersistenceService {
 
     private static final String DEFAULT_URL = "http://127.0.0.1:8086";
     private static final String DEFAULT_DB = "openhab";
     private static final String DEFAULT_USER = "openhab";
     private static final String DEFAULT_RETENTION_POLICY = "autogen";
+    private static final int DEFAULT_BATCH_SIZE = 200;
+    private static final int DEFAULT_FLUSH_INTERVAL = 100;
+    private static final int DEFAULT_BUFFER_LIMIT = 10000;
+    private static final int DEFAULT_JITTER_INTERVAL = 0;
+    private static final int DEFAULT_RETRY_ATTEMPTS = 3;
+    // buckets of an aggregated query without begin date, otherwise group by time would start at the epoch
+    private static final int DEFAULT_AGGREGATE_BUCKETS = 1000;
+    private static final String OVERFLOW_POLICY_BLOCK = "block";
     private static final String DIGITAL_VALUE_OFF = "0";
     private static final String DIGITAL_VALUE_ON = "1";
     private static final String VALUE_COLUMN_NAME = "value";
@@ -108,17 +114,45 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
     private @NonNullByDefault({}) String url;
     private @NonNullByDefault({}) String user;
     private @Nullable String password;
-    private @NonNullByDefault({}) String retentionPolicy;
+    private @NonNullByDefault({}) String retentionPolicy = DEFAULT_RETENTION_POLICY;
+    private int batchSize;
+    private int flushInterval;
+    private int bufferLimit;
+    private int jitterInterval;
+    private boolean blockOnOverflow;
+    private int retryAttempts;
+    private volatile @Nullable InfluxDBBatchWriter batchWriter;
     private boolean isProperlyConfigured;
     private boolean connected;
 
     @Reference
     protected @NonNullByDefault({}) ItemRegistry itemRegistry;
 
+    // decoder per item name, resolved once for all series of the item
+    private final Map<String, InfluxDBStateDecoder> decoders = new ConcurrentHashMap<>();
+    private final RegistryChangeListener<Item> itemListener = new RegistryChangeListener<Item>() {
+        @Override
+        public void added(Item element) {
+            decoders.remove(element.getName());
+        }
+
+        @Override
+        public void removed(Item element) {
+            decoders.remove(element.getName());
+        }
+
+        @Override
+        public void updated(Item oldElement, Item element) {
+            decoders.remove(oldElement.getName());
+            decoders.remove(element.getName());
+        }
+    };
+
     @Activate
     public void activate(final BundleContext bundleContext, final Map<String, @Nullable Object> config) {
         logger.debug("influxdb persistence service activated");
         disconnect();
+        itemRegistry.addRegistryChangeListener(itemListener);
         password = (String) config.get("password");
         if (isBlank(password)) {
             isProperlyConfigured = false;
@@ -149,6 +183,13 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
             retentionPolicy = DEFAULT_RETENTION_POLICY;
             logger.debug("using default retentionPolicy {}", DEFAULT_RETENTION_POLICY);
         }
+        batchSize = getIntConfig(config, "batchSize", DEFAULT_BATCH_SIZE, 1);
+        flushInterval = getIntConfig(config, "flushInterval", DEFAULT_FLUSH_INTERVAL, 1);
+        bufferLimit = getIntConfig(config, "bufferLimit", DEFAULT_BUFFER_LIMIT, 1);
+        jitterInterval = getIntConfig(config, "jitterInterval", DEFAULT_JITTER_INTERVAL, 0);
+        retryAttempts = getIntConfig(config, "retryAttempts", DEFAULT_RETRY_ATTEMPTS, 0);
+        String overflowPolicy = (String) config.get("overflowPolicy");
+        blockOnOverflow = OVERFLOW_POLICY_BLOCK.equalsIgnoreCase(overflowPolicy);
         isProperlyConfigured = true;
 
         connect();
@@ -160,9 +201,28 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
         }
     }
 
+    private int getIntConfig(Map<String, @Nullable Object> config, String key, int defaultValue, int min) {
+        Object value = config.get(key);
+        if (value == null || isBlank(value.toString())) {
+            return defaultValue;
+        }
+        try {
+            int i = Integer.parseInt(value.toString().trim());
+            if (i >= min) {
+                return i;
+            }
+        } catch (NumberFormatException e) {
+            // handled below
+        }
+        logger.warn("invalid value '{}' for parameter {}, using default {}", value, key, defaultValue);
+        return defaultValue;
+    }
+
     @Deactivate
     public void deactivate() {
         logger.debug("influxdb persistence service deactivated");
+        itemRegistry.removeRegistryChangeListener(itemListener);
+        decoders.clear();
         disconnect();
     }
 
@@ -171,7 +231,12 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
             // reuse an existing InfluxDB object because concerning the database it has no state
             // connection
             influxDB = InfluxDBFactory.connect(url, user, password);
-            influxDB.enableBatch(200, 100, TIME_UNIT);
+        }
+        if (batchWriter == null) {
+            InfluxDBBatchWriter writer = new InfluxDBBatchWriter(influxDB, dbName, retentionPolicy, batchSize,
+                    flushInterval, bufferLimit, jitterInterval, blockOnOverflow, retryAttempts);
+            writer.start();
+            batchWriter = writer;
         }
         connected = true;
     }
@@ -204,6 +269,12 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
     }
 
     private void disconnect() {
+        InfluxDBBatchWriter writer = batchWriter;
+        if (writer != null) {
+            batchWriter = null;
+            // writes the points still queued
+            writer.stop();
+        }
         influxDB = null;
         connected = false;
     }
@@ -267,11 +338,11 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
         logger.trace("storing {} in influxdb value {}, {}", name, value, item);
         Point point = Point.measurement(name).field(VALUE_COLUMN_NAME, value)
                 .time(System.currentTimeMillis(), TIME_UNIT).build();
-        try {
-            influxDB.write(dbName, retentionPolicy, point);
-        } catch (RuntimeException e) {
-            logger.error("storing failed with exception for item: {}", name);
-            handleDatabaseException(e);
+        InfluxDBBatchWriter writer = batchWriter;
+        if (writer == null) {
+            logger.debug("batch writer is not running, disconnected meanwhile, point of {} dropped", name);
+        } else if (!writer.offer(point)) {
+            logger.debug("point of {} not queued, the batch writer is stopping or its buffer is full", name);
         }
     }
 
@@ -289,27 +360,182 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
     public Iterable<HistoricItem> query(FilterCriteria filter) {
         logger.debug("got a query");
 
-        if (!isProperlyConfigured) {
-            logger.warn("Configuration for influxdb not yet loaded or broken.");
+        if (!isQueryable()) {
             return Collections.emptyList();
         }
 
-        if (!isConnected()) {
-            logger.warn("InfluxDB is not yet connected");
+        String from = filter.getItemName() != null ? measurement(filter.getItemName()) : measurements(".*");
+        List<HistoricItem> historicItems = new ArrayList<>();
+        executeQuery(buildQuery(from, filter), name -> historicItems);
+        return historicItems;
+    }
+
+    @Override
+    public Map<String, List<HistoricItem>> query(Collection<String> itemNames, FilterCriteria filter) {
+        logger.debug("got a query for {} items", itemNames.size());
+
+        Map<String, List<HistoricItem>> historicItems = new LinkedHashMap<>();
+        if (itemNames.isEmpty() || !isQueryable()) {
+            return historicItems;
+        }
+        for (String itemName : itemNames) {
+            historicItems.put(itemName, new ArrayList<>());
+        }
+
+        executeQuery(buildQuery(measurements(itemNames), filter),
+                name -> historicItems.computeIfAbsent(name, k -> new ArrayList<>()));
+        return historicItems;
+    }
+
+    @Override
+    public Map<String, List<HistoricItem>> queryMatching(String itemNameRegex, FilterCriteria filter) {
+        logger.debug("got a query for items matching {}", itemNameRegex);
+
+        Map<String, List<HistoricItem>> historicItems = new LinkedHashMap<>();
+        if (!isQueryable()) {
+            return historicItems;
+        }
+
+        executeQuery(buildQuery(measurements(itemNameRegex), filter),
+                name -> historicItems.computeIfAbsent(name, k -> new ArrayList<>()));
+        return historicItems;
+    }
+
+    String buildQuery(String from, FilterCriteria filter) {
+        StringBuffer query = new StringBuffer();
+        query.append("select ").append(VALUE_COLUMN_NAME).append(' ');
+        appendFromWhere(query, from, filter);
+
+        if (filter.getOrdering() == Ordering.DESCENDING) {
+            query.append(String.format(" ORDER BY %s DESC", TIME_COLUMN_NAME));
+            logger.debug("descending ordering ");
+        }
+
+        // only the requested page is transferred, for a query of all items it applies to each item
+        if (filter.getPageSize() != Integer.MAX_VALUE) {
+            long offset = (long) filter.getPageSize() * filter.getPageNumber();
+            query.append(" limit ").append(filter.getPageSize());
+            if (offset > 0) {
+                query.append(" offset ").append(offset);
+            }
+            logger.trace("appending limit {} offset {}", filter.getPageSize(), offset);
+        }
+        return query.toString();
+    }
+
+    @Override
+    public Iterable<HistoricItem> query(FilterCriteria filter, InfluxDBAggregation aggregation, int bucketSeconds) {
+        if (bucketSeconds <= 0) {
+            return query(filter);
+        }
+        logger.debug("got an aggregated query");
+
+        if (!isQueryable()) {
             return Collections.emptyList();
         }
 
+        String itemName = filter.getItemName();
+        InfluxDBStateDecoder decoder = itemName != null ? getDecoder(itemName) : null;
+        InfluxDBAggregation agg = aggregation.applicableTo(decoder != null && decoder.isNumeric());
+        if (agg != aggregation) {
+            logger.debug("{} is not supported for {}, using LAST", aggregation,
+                    itemName != null ? "item '" + itemName + "'" : "all items");
+        }
+
+        String from = itemName != null ? measurement(itemName) : measurements(".*");
         List<HistoricItem> historicItems = new ArrayList<>();
+        executeQuery(buildAggregateQuery(from, filter, agg, bucketSeconds), name -> historicItems);
+        return historicItems;
+    }
 
+    String buildAggregateQuery(String from, FilterCriteria filter, InfluxDBAggregation aggregation, int bucketSeconds) {
         StringBuffer query = new StringBuffer();
-        query.append("select ").append(VALUE_COLUMN_NAME).append(' ').append("from \"").append(retentionPolicy)
-                .append("\".");
-
-        if (filter.getItemName() != null) {
-            query.append('"').append(filter.getItemName()).append('"');
+        // the alias keeps the column name of raw queries
+        query.append("select ").append(aggregation.getFunction()).append('(').append(VALUE_COLUMN_NAME)
+                .append(") as ").append(VALUE_COLUMN_NAME).append(' ');
+        if (filter.getBeginDate() == null) {
+            ZonedDateTime end = filter.getEndDate() != null ? filter.getEndDateZoned() : ZonedDateTime.now();
+            appendFromWhere(query, from,
+                    withBeginDate(filter, end.minusSeconds((long) bucketSeconds * DEFAULT_AGGREGATE_BUCKETS)));
         } else {
-            query.append("/.*/");
+            appendFromWhere(query, from, filter);
         }
+        query.append(" group by time(").append(bucketSeconds).append("s) fill(none)");
+
+        if (filter.getOrdering() == Ordering.DESCENDING) {
+            query.append(String.format(" ORDER BY %s DESC", TIME_COLUMN_NAME));
+        }
+        return query.toString();
+    }
+
+    private static FilterCriteria withBeginDate(FilterCriteria filter, ZonedDateTime beginDate) {
+        FilterCriteria bounded = new FilterCriteria();
+        bounded.setItemName(filter.getItemName());
+        bounded.setBeginDate(beginDate);
+        bounded.setEndDate(filter.getEndDateZoned());
+        bounded.setState(filter.getState());
+        bounded.setOperator(filter.getOperator());
+        bounded.setOrdering(filter.getOrdering());
+        bounded.setPageSize(filter.getPageSize());
+        bounded.setPageNumber(filter.getPageNumber());
+        return bounded;
+    }
+
+    private boolean isQueryable() {
+        if (!isProperlyConfigured) {
+            logger.warn("Configuration for influxdb not yet loaded or broken.");
+            return false;
+        }
+
+        if (!isConnected()) {
+            logger.warn("InfluxDB is not yet connected");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the decoder of the values of an item, null if the item is not in the registry
+     */
+    private @Nullable InfluxDBStateDecoder getDecoder(String itemName) {
+        InfluxDBStateDecoder decoder = decoders.get(itemName);
+        if (decoder == null) {
+            try {
+                decoder = InfluxDBStateDecoder.of(itemRegistry.getItem(itemName));
+                decoders.put(itemName, decoder);
+            } catch (ItemNotFoundException e) {
+                return null;
+            }
+        }
+        return decoder;
+    }
+
+    /**
+     * @return the measurement of an item in the retention policy
+     */
+    String measurement(String itemName) {
+        return '"' + retentionPolicy + "\".\"" + itemName + '"';
+    }
+
+    /**
+     * @return the measurements of several items in the retention policy
+     */
+    String measurements(Collection<String> itemNames) {
+        return itemNames.stream().map(this::measurement).collect(Collectors.joining(","));
+    }
+
+    /**
+     * @return the measurements matching a regular expression in the retention policy
+     */
+    String measurements(String regex) {
+        return '"' + retentionPolicy + "\"./" + regex.replace("/", "\\/") + '/';
+    }
+
+    /**
+     * Appends the from clause and the where clause for the time range and state condition of a filter.
+     */
+    private void appendFromWhere(StringBuffer query, String from, FilterCriteria filter) {
+        query.append("from ").append(from);
 
         logger.trace(
                 "Filter: itemname: {}, ordering: {}, state: {},  operator: {}, getBeginDate: {}, getEndDate: {}, getPageSize: {}, getPageNumber: {}",
@@ -356,23 +582,16 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
                 query.append(" ");
             }
         }
+    }
 
-        if (filter.getOrdering() == Ordering.DESCENDING) {
-            query.append(String.format(" ORDER BY %s DESC", TIME_COLUMN_NAME));
-            logger.debug("descending ordering ");
-        }
-
-        int limit = (filter.getPageNumber() + 1) * filter.getPageSize();
-        query.append(" limit " + limit);
-        logger.trace("appending limit {}", limit);
-
-        int totalEntriesAffected = ((filter.getPageNumber() + 1) * filter.getPageSize());
-        int startEntryNum = totalEntriesAffected
-                - (totalEntriesAffected - (filter.getPageSize() * filter.getPageNumber()));
-        logger.trace("startEntryNum {}", startEntryNum);
-
-        logger.debug("query string: {}", query.toString());
-        Query influxdbQuery = new Query(query.toString(), dbName);
+    /**
+     * Runs a query and adds the values of each returned series to the list of its item.
+     *
+     * @param historicItems returns the list to add the values of an item to
+     */
+    private void executeQuery(String query, Function<String, List<HistoricItem>> historicItems) {
+        logger.debug("query string: {}", query);
+        Query influxdbQuery = new Query(query, dbName);
 
         List<Result> results = Collections.emptyList();
         results = influxDB.query(influxdbQuery, TIME_UNIT).getResults();
@@ -407,18 +626,29 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
                         if (valueColumn == null || timestampColumn == null) {
                             throw new IllegalStateException("missing column");
                         }
-                        for (int i = 0; i < valuess.size(); i++) {
-                            Double rawTime = (Double) valuess.get(i).get(timestampColumn);
-                            Date time = new Date(rawTime.longValue());
-                            State value = objectToState(valuess.get(i).get(valueColumn), historicItemName);
-                            logger.trace("adding historic item {}: time {} value {}", historicItemName, time, value);
-                            historicItems.add(new InfluxdbItem(historicItemName, value, time));
+                        int tc = timestampColumn;
+                        int vc = valueColumn;
+                        InfluxDBStateDecoder decoder = getDecoder(historicItemName);
+                        if (decoder == null) {
+                            // just return StringTypes as a fallback
+                            logger.warn("Could not find item '{}' in registry", historicItemName);
+                            decoder = InfluxDBStateDecoder.STRING;
+                        }
+                        List<HistoricItem> items = historicItems.apply(historicItemName);
+                        boolean trace = logger.isTraceEnabled();
+                        for (List<Object> row : valuess) {
+                            Date time = new Date(((Number) row.get(tc)).longValue());
+                            State value = decoder.toState(row.get(vc));
+                            if (trace) {
+                                logger.trace("adding historic item {}: time {} value {}", historicItemName, time,
+                                        value);
+                            }
+                            items.add(new InfluxdbItem(historicItemName, value, time));
                         }
                     }
                 }
             }
         }
-        return historicItems;
     }
 
     private String getTimeFilter(Date time) {
@@ -506,80 +736,6 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService {
         return value;
     }
 
-    /**
-     * Converts a value to a {@link State} which is suitable for the given {@link Item}. This is
-     * needed for querying a {@link HistoricState}.
-     *
-     * @param value to be converted to a {@link State}
-     * @param itemName name of the {@link Item} to get the {@link State} for
-     * @return the state of the item represented by the itemName parameter, else the string value of
-     *         the Object parameter
-     */
-    private State objectToState(Object value, String itemName) {
-        String valueStr = String.valueOf(value);
-        if (itemRegistry != null) {
-            try {
-                Item item = itemRegistry.getItem(itemName);
-                if (item instanceof GroupItem) {
-                    item = ((GroupItem) item).getBaseItem();
-                }
-                if (item instanceof ColorItem) {
-                    logger.debug("objectToState found a ColorItem {}", valueStr);
-                    return new HSBType(valueStr);
-                } else if (item instanceof LocationItem) {
-                    logger.debug("objectToState found a LocationItem");
-                    return new PointType(valueStr);
-                } else if (item instanceof NumberItem) {
-                    logger.debug("objectToState found a NumberItem");
-                    return new DecimalType(valueStr);
-                } else if (item instanceof DimmerItem) {
-                    logger.debug("objectToState found a DimmerItem");
-                    return new PercentType(valueStr);
-                } else if (item instanceof SwitchItem) {
-                    logger.debug("objectToState found a SwitchItem");
-                    return string2DigitalValue(valueStr).equals(DIGITAL_VALUE_OFF) ? OnOffType.OFF : OnOffType.ON;
-                } else if (item instanceof ContactItem) {
-                    logger.debug("objectToState found a ContactItem");
-                    return (string2DigitalValue(valueStr).equals(DIGITAL_VALUE_OFF)) ? OpenClosedType.CLOSED
-                            : OpenClosedType.OPEN;
-                } else if (item instanceof RollershutterItem) {
-                    logger.debug("objectToState found a RollershutterItem");
-                    return new PercentType(valueStr);
-                } else if (item instanceof DateTimeItem) {
-                    logger.debug("objectToState found a DateItem");
-                    Calendar calendar = Calendar.getInstance();
-                    calendar.setTimeInMillis(new BigDecimal(valueStr).longValue());
-                    return new DateTimeType(calendar);
-                } else {
-                    logger.debug("objectToState found a other Item");
-                    return new StringType(valueStr);
-                }
-            } catch (ItemNotFoundException e) {
-                logger.warn("Could not find item '{}' in registry", itemName);
-            }
-        }
-        // just return a StringType as a fallback
-        return new StringType(valueStr);
-    }
-
-    /**
-     * Maps a string value which expresses a {@link BigDecimal.ZERO } to DIGITAL_VALUE_OFF, all others
-     * to DIGITAL_VALUE_ON
-     *
-     * @param value to be mapped
-     * @return
-     */
-    private String string2DigitalValue(String value) {
-        BigDecimal num = new BigDecimal(value);
-        if (num.compareTo(BigDecimal.ZERO) == 0) {
-            logger.trace("digitalvalue {}", DIGITAL_VALUE_OFF);
-            return DIGITAL_VALUE_OFF;
-        } else {
-            logger.trace("digitalvalue {}", DIGITAL_VALUE_ON);
-            return DIGITAL_VALUE_ON;
-        }
-    }
-
     private String point2String(PointType point) {
         StringBuilder buf = new StringBuilder();
         buf.append(point.getLatitude().toString());
@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.influxdb.internal;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.core.items.GroupItem;
+import org.openhab.core.items.Item;
+import org.openhab.core.library.items.ColorItem;
+import org.openhab.core.library.items.ContactItem;
+import org.openhab.core.library.items.DateTimeItem;
+import org.openhab.core.library.items.DimmerItem;
+import org.openhab.core.library.items.LocationItem;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.items.RollershutterItem;
+import org.openhab.core.library.items.SwitchItem;
+import org.openhab.core.library.types.DateTimeType;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.HSBType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.OpenClosedType;
+import org.openhab.core.library.types.PercentType;
+import org.openhab.core.library.types.PointType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.types.State;
+
+/**
+ * Converts the values of a series returned by InfluxDB to the states of its item.
+ *
+ * The decoder is resolved once per item, see {@link #of(Item)}. Numbers are returned by the client as
+ * {@link Double}, they are decoded from it directly, without parsing their String representation or creating
+ * {@link BigDecimal}s for Switch and Contact items. Numbers keep the decimal representation of the double, e.g. 21.3
+ * and not its exact binary value.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public enum InfluxDBStateDecoder {
+    NUMBER(true) {
+        @Override
+        public State toState(Object value) {
+            return value instanceof Number ? new DecimalType(BigDecimal.valueOf(((Number) value).doubleValue()))
+                    : new DecimalType(String.valueOf(value));
+        }
+    },
+    /** Dimmer and Rollershutter items */
+    PERCENT(true) {
+        @Override
+        public State toState(Object value) {
+            return value instanceof Number ? new PercentType(BigDecimal.valueOf(((Number) value).doubleValue()))
+                    : new PercentType(String.valueOf(value));
+        }
+    },
+    SWITCH(false) {
+        @Override
+        public State toState(Object value) {
+            return isZero(value) ? OnOffType.OFF : OnOffType.ON;
+        }
+    },
+    CONTACT(false) {
+        @Override
+        public State toState(Object value) {
+            return isZero(value) ? OpenClosedType.CLOSED : OpenClosedType.OPEN;
+        }
+    },
+    DATETIME(false) {
+        @Override
+        public State toState(Object value) {
+            long millis = value instanceof Number ? ((Number) value).longValue()
+                    : new BigDecimal(String.valueOf(value)).longValue();
+            return new DateTimeType(ZonedDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault()));
+        }
+    },
+    COLOR(false) {
+        @Override
+        public State toState(Object value) {
+            return new HSBType(String.valueOf(value));
+        }
+    },
+    LOCATION(false) {
+        @Override
+        public State toState(Object value) {
+            return new PointType(String.valueOf(value));
+        }
+    },
+    /** all other items and values of items which are not in the registry */
+    STRING(false) {
+        @Override
+        public State toState(Object value) {
+            return new StringType(String.valueOf(value));
+        }
+    };
+
+    private final boolean numeric;
+
+    InfluxDBStateDecoder(boolean numeric) {
+        this.numeric = numeric;
+    }
+
+    public static InfluxDBStateDecoder of(Item item) {
+        Item baseItem = item;
+        if (baseItem instanceof GroupItem) {
+            Item groupBaseItem = ((GroupItem) baseItem).getBaseItem();
+            if (groupBaseItem != null) {
+                baseItem = groupBaseItem;
+            }
+        }
+        if (baseItem instanceof ColorItem) {
+            return COLOR;
+        } else if (baseItem instanceof LocationItem) {
+            return LOCATION;
+        } else if (baseItem instanceof NumberItem) {
+            return NUMBER;
+        } else if (baseItem instanceof DimmerItem || baseItem instanceof RollershutterItem) {
+            return PERCENT;
+        } else if (baseItem instanceof SwitchItem) {
+            return SWITCH;
+        } else if (baseItem instanceof ContactItem) {
+            return CONTACT;
+        } else if (baseItem instanceof DateTimeItem) {
+            return DATETIME;
+        }
+        return STRING;
+    }
+
+    /**
+     * @return true if the values are numbers which MEAN, MIN and MAX apply to, Switch and Contact items are stored as
+     *         0 and 1 but are not aggregated
+     */
+    public boolean isNumeric() {
+        return numeric;
+    }
+
+    public abstract State toState(Object value);
+
+    private static boolean isZero(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue() == 0;
+        }
+        return new BigDecimal(String.valueOf(value)).signum() == 0;
+    }
+}
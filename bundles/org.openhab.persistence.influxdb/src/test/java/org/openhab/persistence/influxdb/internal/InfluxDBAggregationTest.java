@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.influxdb.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+import org.junit.Test;
+import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.FilterCriteria.Ordering;
+import org.openhab.persistence.influxdb.InfluxDBAggregation;
+
+/**
+ *
+ * @author agent - Initial contribution
+ *
+ */
+public class InfluxDBAggregationTest {
+
+    private final InfluxDBPersistenceService service = new InfluxDBPersistenceService();
+
+    @Test
+    public void testNumericAggregationOfNumericItems() {
+        assertEquals(InfluxDBAggregation.MEAN, applied(InfluxDBAggregation.MEAN, InfluxDBStateDecoder.NUMBER));
+        assertEquals(InfluxDBAggregation.MAX, applied(InfluxDBAggregation.MAX, InfluxDBStateDecoder.PERCENT));
+    }
+
+    @Test
+    public void testNumericAggregationFallsBackToLast() {
+        assertEquals(InfluxDBAggregation.LAST, applied(InfluxDBAggregation.MEAN, InfluxDBStateDecoder.SWITCH));
+        assertEquals(InfluxDBAggregation.LAST, applied(InfluxDBAggregation.MIN, InfluxDBStateDecoder.CONTACT));
+        assertEquals(InfluxDBAggregation.LAST, applied(InfluxDBAggregation.MAX, InfluxDBStateDecoder.STRING));
+        // several items or an item which is not in the registry
+        assertEquals(InfluxDBAggregation.LAST, InfluxDBAggregation.MEAN.applicableTo(false));
+    }
+
+    @Test
+    public void testLastAppliesToAllItems() {
+        assertEquals(InfluxDBAggregation.LAST, applied(InfluxDBAggregation.LAST, InfluxDBStateDecoder.COLOR));
+        assertEquals(InfluxDBAggregation.LAST, InfluxDBAggregation.LAST.applicableTo(false));
+    }
+
+    @Test
+    public void testAggregateQueryWithTimeRange() {
+        FilterCriteria filter = new FilterCriteria();
+        filter.setBeginDate(ZonedDateTime.ofInstant(Instant.ofEpochSecond(1000), ZoneOffset.UTC));
+        filter.setOrdering(Ordering.ASCENDING);
+        assertEquals(
+                "select mean(value) as value from \"autogen\".\"Temperature\" where  time > 1000s  "
+                        + "group by time(3600s) fill(none)",
+                service.buildAggregateQuery("\"autogen\".\"Temperature\"", filter, InfluxDBAggregation.MEAN, 3600));
+    }
+
+    @Test
+    public void testAggregateQueryDescendingIgnoresPaging() {
+        FilterCriteria filter = new FilterCriteria();
+        filter.setBeginDate(ZonedDateTime.ofInstant(Instant.ofEpochSecond(1000), ZoneOffset.UTC));
+        filter.setOrdering(Ordering.DESCENDING);
+        filter.setPageSize(10);
+        filter.setPageNumber(2);
+        assertEquals(
+                "select last(value) as value from \"autogen\"./.*/ where  time > 1000s  group by time(60s) fill(none) "
+                        + "ORDER BY time DESC",
+                service.buildAggregateQuery("\"autogen\"./.*/", filter, InfluxDBAggregation.LAST, 60));
+    }
+
+    @Test
+    public void testAggregateQueryWithoutBeginCoversDefaultBuckets() {
+        FilterCriteria filter = new FilterCriteria();
+        filter.setEndDate(ZonedDateTime.ofInstant(Instant.ofEpochSecond(100000), ZoneOffset.UTC));
+        filter.setOrdering(Ordering.ASCENDING);
+        // 1000 buckets of 60 s before the end date
+        assertEquals(
+                "select max(value) as value from \"autogen\".\"Temperature\" where  time > 40000s  and time < 100000s "
+                        + " group by time(60s) fill(none)",
+                service.buildAggregateQuery("\"autogen\".\"Temperature\"", filter, InfluxDBAggregation.MAX, 60));
+        assertNull(filter.getBeginDate());
+    }
+
+    private static InfluxDBAggregation applied(InfluxDBAggregation aggregation, InfluxDBStateDecoder decoder) {
+        return aggregation.applicableTo(decoder.isNumeric());
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.influxdb.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.BatchPoints;
+import org.influxdb.dto.Point;
+import org.junit.Test;
+
+/**
+ *
+ * @author agent - Initial contribution
+ *
+ */
+public class InfluxDBBatchWriterTest {
+
+    private final AtomicInteger writeCalls = new AtomicInteger();
+    private final AtomicInteger writtenPoints = new AtomicInteger();
+    // number of writes which fail before writes succeed again
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private final InfluxDB influxDB = (InfluxDB) Proxy.newProxyInstance(InfluxDB.class.getClassLoader(),
+            new Class<?>[] { InfluxDB.class }, (proxy, method, args) -> {
+                if ("write".equals(method.getName()) && args != null && args[0] instanceof BatchPoints) {
+                    writeCalls.incrementAndGet();
+                    if (failures.getAndDecrement() > 0) {
+                        throw new RuntimeException("connection refused");
+                    }
+                    writtenPoints.addAndGet(((BatchPoints) args[0]).getPoints().size());
+                }
+                return null;
+            });
+
+    @Test
+    public void testFailedWriteRetriedThenDropped() throws InterruptedException {
+        failures.set(Integer.MAX_VALUE);
+        InfluxDBBatchWriter writer = writer(10, false, 1);
+        writer.start();
+        assertTrue(writer.offer(point(1)));
+
+        waitFor(() -> writer.getDroppedCount() == 1);
+        writer.stop();
+        assertEquals(2, writeCalls.get());
+        assertEquals(1, writer.getRetriedCount());
+        assertEquals(0, writer.getWrittenCount());
+    }
+
+    @Test
+    public void testFailedWriteRetriedThenWritten() throws InterruptedException {
+        failures.set(1);
+        InfluxDBBatchWriter writer = writer(10, false, 2);
+        writer.start();
+        assertTrue(writer.offer(point(1)));
+
+        waitFor(() -> writer.getWrittenCount() == 1);
+        writer.stop();
+        assertEquals(2, writeCalls.get());
+        assertEquals(1, writer.getRetriedCount());
+        assertEquals(0, writer.getDroppedCount());
+    }
+
+    @Test
+    public void testDropOnFullBuffer() {
+        InfluxDBBatchWriter writer = writer(2, false, 0);
+        assertTrue(writer.offer(point(1)));
+        assertTrue(writer.offer(point(2)));
+        assertFalse(writer.offer(point(3)));
+        assertEquals(1, writer.getDroppedCount());
+
+        writer.stop();
+        assertEquals(2, writtenPoints.get());
+        assertEquals(2, writer.getWrittenCount());
+    }
+
+    @Test
+    public void testBlockOnFullBuffer() throws InterruptedException {
+        InfluxDBBatchWriter writer = writer(1, true, 0);
+        assertTrue(writer.offer(point(1)));
+
+        AtomicBoolean offered = new AtomicBoolean();
+        Thread producer = new Thread(() -> offered.set(writer.offer(point(2))));
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+
+        // stop drains the queue, which unblocks the producer, and waits for its offer
+        writer.stop();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        assertTrue(offered.get());
+        assertEquals(0, writer.getDroppedCount());
+        assertEquals(2, writtenPoints.get());
+    }
+
+    @Test
+    public void testPointsOfferedDuringStop() throws InterruptedException {
+        InfluxDBBatchWriter writer = writer(100, true, 0);
+        writer.start();
+        AtomicInteger accepted = new AtomicInteger();
+        Thread producer = new Thread(() -> {
+            for (int i = 0; writer.offer(point(i)); i++) {
+                accepted.incrementAndGet();
+            }
+        });
+        producer.start();
+        waitFor(() -> accepted.get() > 500);
+
+        writer.stop();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        assertFalse(writer.offer(point(0)));
+        // every accepted point has been written, none is left in the queue
+        assertEquals(0, writer.getQueueSize());
+        assertEquals(accepted.get(), writtenPoints.get());
+        assertEquals(accepted.get(), writer.getWrittenCount());
+    }
+
+    private InfluxDBBatchWriter writer(int bufferLimit, boolean blockOnOverflow, int retryAttempts) {
+        return new InfluxDBBatchWriter(influxDB, "openhab_db", "autogen", 50, 10, bufferLimit, 0, blockOnOverflow,
+                retryAttempts);
+    }
+
+    private static Point point(long time) {
+        return Point.measurement("Temperature").field("value", 21.5).time(time, TimeUnit.MILLISECONDS).build();
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
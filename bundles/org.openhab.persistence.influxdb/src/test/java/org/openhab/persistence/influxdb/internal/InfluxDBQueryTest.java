@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.influxdb.internal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.FilterCriteria.Ordering;
+
+/**
+ *
+ * @author agent - Initial contribution
+ *
+ */
+public class InfluxDBQueryTest {
+
+    private static final String FROM = "\"autogen\".\"Temperature\"";
+
+    private final InfluxDBPersistenceService service = new InfluxDBPersistenceService();
+
+    @Test
+    public void testUnpagedQueryHasNoLimit() {
+        FilterCriteria filter = new FilterCriteria();
+        filter.setOrdering(Ordering.ASCENDING);
+        assertEquals("select value from \"autogen\".\"Temperature\"", service.buildQuery(FROM, filter));
+    }
+
+    @Test
+    public void testFirstPageHasNoOffset() {
+        FilterCriteria filter = new FilterCriteria();
+        filter.setOrdering(Ordering.DESCENDING);
+        filter.setPageSize(50);
+        assertEquals("select value from \"autogen\".\"Temperature\" ORDER BY time DESC limit 50",
+                service.buildQuery(FROM, filter));
+    }
+
+    @Test
+    public void testLaterPageSkipsPreviousPages() {
+        FilterCriteria filter = new FilterCriteria();
+        filter.setOrdering(Ordering.ASCENDING);
+        filter.setPageSize(50);
+        filter.setPageNumber(3);
+        assertEquals("select value from \"autogen\".\"Temperature\" limit 50 offset 150",
+                service.buildQuery(FROM, filter));
+    }
+
+    @Test
+    public void testOffsetDoesNotOverflow() {
+        FilterCriteria filter = new FilterCriteria();
+        filter.setOrdering(Ordering.ASCENDING);
+        filter.setPageSize(1000000);
+        filter.setPageNumber(5000);
+        assertEquals("select value from \"autogen\".\"Temperature\" limit 1000000 offset 5000000000",
+                service.buildQuery(FROM, filter));
+    }
+
+    @Test
+    public void testQueryOfItemList() {
+        FilterCriteria filter = new FilterCriteria();
+        filter.setOrdering(Ordering.ASCENDING);
+        filter.setPageSize(10);
+        assertEquals("select value from \"autogen\".\"Temperature\",\"autogen\".\"Humidity\" limit 10",
+                service.buildQuery(service.measurements(Arrays.asList("Temperature", "Humidity")), filter));
+    }
+
+    @Test
+    public void testQueryOfMatchingItems() {
+        FilterCriteria filter = new FilterCriteria();
+        filter.setBeginDate(ZonedDateTime.ofInstant(Instant.ofEpochSecond(1000), ZoneOffset.UTC));
+        filter.setOrdering(Ordering.DESCENDING);
+        assertEquals("select value from \"autogen\"./^Temperature_/ where  time > 1000s  ORDER BY time DESC",
+                service.buildQuery(service.measurements("^Temperature_"), filter));
+    }
+
+    @Test
+    public void testSlashOfRegexIsEscaped() {
+        assertEquals("\"autogen\"./^Floor\\/Temperature/", service.measurements("^Floor/Temperature"));
+    }
+}
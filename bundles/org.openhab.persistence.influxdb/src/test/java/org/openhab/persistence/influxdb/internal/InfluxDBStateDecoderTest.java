@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.influxdb.internal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+
+import org.junit.Test;
+import org.openhab.core.library.items.ContactItem;
+import org.openhab.core.library.items.DimmerItem;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.items.StringItem;
+import org.openhab.core.library.items.SwitchItem;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.OpenClosedType;
+import org.openhab.core.library.types.PercentType;
+import org.openhab.core.library.types.StringType;
+
+/**
+ *
+ * @author agent - Initial contribution
+ *
+ */
+public class InfluxDBStateDecoderTest {
+
+    @Test
+    public void testDecoderOfItem() {
+        assertEquals(InfluxDBStateDecoder.NUMBER, InfluxDBStateDecoder.of(new NumberItem("n")));
+        assertEquals(InfluxDBStateDecoder.PERCENT, InfluxDBStateDecoder.of(new DimmerItem("d")));
+        assertEquals(InfluxDBStateDecoder.SWITCH, InfluxDBStateDecoder.of(new SwitchItem("s")));
+        assertEquals(InfluxDBStateDecoder.CONTACT, InfluxDBStateDecoder.of(new ContactItem("c")));
+        assertEquals(InfluxDBStateDecoder.STRING, InfluxDBStateDecoder.of(new StringItem("t")));
+    }
+
+    @Test
+    public void testNumberKeepsDecimalRepresentation() {
+        DecimalType state = (DecimalType) InfluxDBStateDecoder.NUMBER.toState(21.3);
+        assertEquals(new BigDecimal("21.3"), state.toBigDecimal());
+        assertEquals(new DecimalType("21.3"), InfluxDBStateDecoder.NUMBER.toState("21.3"));
+    }
+
+    @Test
+    public void testPercent() {
+        assertEquals(new PercentType(40), InfluxDBStateDecoder.PERCENT.toState(40.0));
+    }
+
+    @Test
+    public void testSwitchAndContact() {
+        assertEquals(OnOffType.ON, InfluxDBStateDecoder.SWITCH.toState(1.0));
+        assertEquals(OnOffType.OFF, InfluxDBStateDecoder.SWITCH.toState(0.0));
+        assertEquals(OnOffType.OFF, InfluxDBStateDecoder.SWITCH.toState("0"));
+        assertEquals(OpenClosedType.OPEN, InfluxDBStateDecoder.CONTACT.toState(1.0));
+        assertEquals(OpenClosedType.CLOSED, InfluxDBStateDecoder.CONTACT.toState(0.0));
+    }
+
+    @Test
+    public void testString() {
+        assertEquals(new StringType("text"), InfluxDBStateDecoder.STRING.toState("text"));
+    }
+}
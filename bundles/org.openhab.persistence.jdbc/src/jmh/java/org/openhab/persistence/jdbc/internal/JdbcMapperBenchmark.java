@@ -0,0 +1,231 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.internal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openhab.core.items.GenericItem;
+import org.openhab.core.library.items.DimmerItem;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.items.StringItem;
+import org.openhab.core.library.items.SwitchItem;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.PercentType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.FilterCriteria.Ordering;
+import org.openhab.core.persistence.HistoricItem;
+import org.openhab.persistence.jdbc.model.ItemVO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the store and query paths of {@link JdbcMapper} against the embedded databases supported by the bundle.
+ *
+ * Each trial creates a fresh database in a temporary directory with tableCount items of a typical mix (60% Number,
+ * 20% Switch, 10% Dimmer, 10% String) and rowsPerTable values of history per item, one minute apart.
+ *
+ * @author agent - Initial contribution
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JdbcMapperBenchmark {
+
+    @Param({ "h2", "derby", "sqlite", "hsqldb" })
+    public String db;
+
+    @Param({ "10", "200" })
+    public int tableCount;
+
+    @Param({ "500" })
+    public int rowsPerTable;
+
+    private static final int BATCH_SIZE = 100;
+
+    private final Random random = new Random(42);
+    private Path dir;
+    private JdbcMapper mapper;
+    private final List<GenericItem> items = new ArrayList<>();
+    private final List<String> tables = new ArrayList<>();
+    private int next = 0;
+    // explicit times of batched values, after the history so they never collide with it
+    private long batchTime;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("jdbc-jmh-" + db);
+        Map<Object, Object> configuration = new HashMap<>();
+        configuration.put("url", url());
+        mapper = new JdbcMapper();
+        mapper.conf = new JdbcConfiguration(configuration);
+        if (!mapper.checkDBAccessability()) {
+            throw new IllegalStateException("JDBC::JdbcMapperBenchmark: cannot connect to " + url());
+        }
+        mapper.checkDBSchema();
+
+        for (int i = 0; i < tableCount; i++) {
+            GenericItem item = createItem(i);
+            items.add(item);
+            tables.add(mapper.getTable(item));
+        }
+
+        long start = System.currentTimeMillis() - rowsPerTable * 60000L;
+        for (int i = 0; i < tableCount; i++) {
+            List<ItemVO> vol = new ArrayList<>(rowsPerTable);
+            for (int r = 0; r < rowsPerTable; r++) {
+                vol.add(prepareValue(i, new Date(start + r * 60000L)));
+            }
+            mapper.storeItemValues(tables.get(i), vol);
+        }
+        batchTime = System.currentTimeMillis() + 60000L;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        mapper.closeConnection();
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /**
+     * Immediate write of one value, the default write path of the service.
+     */
+    @Benchmark
+    public void storeItemValue() {
+        int i = nextIndex();
+        GenericItem item = items.get(i);
+        updateState(item, i);
+        mapper.storeItemValue(item);
+    }
+
+    /**
+     * Batched write of BATCH_SIZE values to one table, the path of the buffered writer.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void storeItemValues() {
+        int i = nextIndex();
+        List<ItemVO> vol = new ArrayList<>(BATCH_SIZE);
+        for (int r = 0; r < BATCH_SIZE; r++) {
+            vol.add(prepareValue(i, new Date(batchTime++)));
+        }
+        mapper.storeItemValues(tables.get(i), vol);
+    }
+
+    /**
+     * Newest value of an item, as asked for by restoreOnStartup and previousState.
+     */
+    @Benchmark
+    public List<HistoricItem> queryLatest() {
+        int i = nextIndex();
+        FilterCriteria filter = new FilterCriteria().setItemName(items.get(i).getName())
+                .setOrdering(Ordering.DESCENDING).setPageSize(1);
+        return mapper.getHistItemFilterQuery(filter, 3, tables.get(i), items.get(i));
+    }
+
+    /**
+     * The last hour of an item, as read by charts.
+     */
+    @Benchmark
+    public List<HistoricItem> queryRange() {
+        int i = nextIndex();
+        FilterCriteria filter = new FilterCriteria().setItemName(items.get(i).getName())
+                .setBeginDate(ZonedDateTime.now().minusHours(1)).setOrdering(Ordering.ASCENDING);
+        return mapper.getHistItemFilterQuery(filter, 3, tables.get(i), items.get(i));
+    }
+
+    private String url() {
+        switch (db) {
+            case "derby":
+                return "jdbc:derby:" + dir.resolve("derby") + ";create=true";
+            case "sqlite":
+                return "jdbc:sqlite:" + dir.resolve("sqlite.db");
+            case "hsqldb":
+                return "jdbc:hsqldb:" + dir.resolve("hsqldb");
+            default:
+                return "jdbc:h2:" + dir.resolve("h2");
+        }
+    }
+
+    private GenericItem createItem(int i) {
+        String name = String.format("Bench_%04d", i);
+        GenericItem item;
+        int kind = i % 10;
+        if (kind < 6) {
+            item = new NumberItem(name);
+        } else if (kind < 8) {
+            item = new SwitchItem(name);
+        } else if (kind < 9) {
+            item = new DimmerItem(name);
+        } else {
+            item = new StringItem(name);
+        }
+        updateState(item, i);
+        return item;
+    }
+
+    private void updateState(GenericItem item, int i) {
+        if (item instanceof DimmerItem) {
+            item.setState(new PercentType(random.nextInt(101)));
+        } else if (item instanceof NumberItem) {
+            item.setState(new DecimalType(random.nextDouble() * 100));
+        } else if (item instanceof SwitchItem) {
+            item.setState(random.nextBoolean() ? OnOffType.ON : OnOffType.OFF);
+        } else {
+            item.setState(new StringType("value " + random.nextInt(1000) + " of item " + i));
+        }
+    }
+
+    private ItemVO prepareValue(int i, Date time) {
+        GenericItem item = items.get(i);
+        updateState(item, i);
+        ItemVO vo = mapper.conf.getDBDAO().doPrepareItemValue(item, new ItemVO(tables.get(i), null));
+        vo.setTime(time);
+        return vo;
+    }
+
+    private int nextIndex() {
+        next = (next + 1) % tableCount;
+        return next;
+    }
+}
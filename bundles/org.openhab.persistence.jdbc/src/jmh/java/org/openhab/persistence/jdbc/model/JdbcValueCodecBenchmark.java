@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.model;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.ZonedDateTime;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openhab.core.library.types.DateTimeType;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.PercentType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures binding and decoding of values by {@link JdbcValueCodec} against an in-memory H2 database.
+ *
+ * Meant to be run with the GC profiler, whose gc.alloc.rate.norm is the number of bytes allocated per value:
+ * read decodes with the primitive getter of the codec, readObject with the generic getObject conversion as used by
+ * queries through Yank.
+ *
+ * @author agent - Initial contribution
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JdbcValueCodecBenchmark {
+
+    @Param({ "NUMBER_DOUBLE", "PERCENT", "SWITCH", "DATETIME" })
+    public JdbcValueCodec codec;
+
+    private static final int ROWS = 1000;
+
+    private Connection con;
+    private PreparedStatement insert;
+    private PreparedStatement select;
+    private org.openhab.core.types.State state;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        con = DriverManager.getConnection("jdbc:h2:mem:codec_" + codec);
+        try (Statement st = con.createStatement()) {
+            st.execute("CREATE TABLE item (time TIMESTAMP NOT NULL, value " + sqlType() + ", PRIMARY KEY(time))");
+        }
+        insert = con.prepareStatement("INSERT INTO item (time, value) VALUES (?, ?)");
+        Random random = new Random(42);
+        long start = System.currentTimeMillis() - ROWS * 60000L;
+        for (int i = 0; i < ROWS; i++) {
+            insert.setTimestamp(1, new java.sql.Timestamp(start + i * 60000L));
+            codec.bind(insert, 2, createState(random));
+            insert.addBatch();
+        }
+        insert.executeBatch();
+        state = createState(random);
+        select = con.prepareStatement("SELECT value FROM item");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Statement st = con.createStatement()) {
+            st.execute("DROP TABLE item");
+        }
+        con.close();
+    }
+
+    /**
+     * Binds one value to an insert statement, the write path of an immediately stored value.
+     */
+    @Benchmark
+    public void bind() throws SQLException {
+        codec.bind(insert, 2, state);
+    }
+
+    /**
+     * Decodes the value column of all rows with the primitive getter of the codec.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void read(Blackhole bh) throws SQLException {
+        try (ResultSet rs = select.executeQuery()) {
+            while (rs.next()) {
+                bh.consume(codec.read(rs, 1));
+            }
+        }
+    }
+
+    /**
+     * Decodes the value column of all rows from the objects of the JDBC driver.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void readObject(Blackhole bh) throws SQLException {
+        try (ResultSet rs = select.executeQuery()) {
+            while (rs.next()) {
+                bh.consume(codec.toState(rs.getObject(1)));
+            }
+        }
+    }
+
+    private String sqlType() {
+        switch (codec) {
+            case NUMBER_DOUBLE:
+                return "DOUBLE";
+            case PERCENT:
+                return "TINYINT";
+            case DATETIME:
+                return "TIMESTAMP";
+            default:
+                return "VARCHAR(6)";
+        }
+    }
+
+    private org.openhab.core.types.State createState(Random random) {
+        switch (codec) {
+            case NUMBER_DOUBLE:
+                return new DecimalType(random.nextDouble() * 100);
+            case PERCENT:
+                return new PercentType(random.nextInt(101));
+            case DATETIME:
+                return new DateTimeType(ZonedDateTime.now().minusSeconds(random.nextInt(86400)));
+            default:
+                return random.nextBoolean() ? OnOffType.ON : OnOffType.OFF;
+        }
+    }
+}
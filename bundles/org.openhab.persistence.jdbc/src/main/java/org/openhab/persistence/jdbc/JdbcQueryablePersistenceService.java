@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.core.items.Item;
+import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.persistence.QueryablePersistenceService;
+import org.openhab.persistence.jdbc.model.Aggregation;
+
+/**
+ * Queries and imports of the JDBC persistence service beyond those of a {@link QueryablePersistenceService}.
+ * The service is registered under this interface too, so other bundles can look it up to use them.
+ *
+ * @author agent - Initial contribution
+ */
+@NonNullByDefault
+public interface JdbcQueryablePersistenceService extends QueryablePersistenceService {
+
+    /**
+     * Queries the values of a numeric item aggregated per time bucket of bucketSeconds by the database, e.g. the
+     * hourly average of a temperature. Non numeric items only support {@link Aggregation#LAST}, other aggregations
+     * fall back to it. Paging of the filter is not applied to aggregated results.
+     *
+     * @param filter the item and time range to query
+     * @param aggregation the aggregation applied per bucket
+     * @param bucketSeconds the bucket length, the filter is queried without aggregation if not positive
+     * @return one value per bucket which holds stored values
+     */
+    Iterable<HistoricItem> query(FilterCriteria filter, Aggregation aggregation, int bucketSeconds);
+
+    /**
+     * Like {@link #query(FilterCriteria)}, but rows are read from the database and converted while the result is
+     * iterated, so exports of long ranges need constant memory. The result holds a database connection until it
+     * has been iterated completely; callers stopping early have to close it, it is {@link AutoCloseable}. If reading
+     * fails midway, iterating throws an {@link IllegalStateException}.
+     *
+     * @param filter the item, time range and paging to query
+     * @return the values, read while iterated
+     */
+    Iterable<HistoricItem> queryStream(FilterCriteria filter);
+
+    /**
+     * Imports historic values of an item, e.g. to backfill the database from another persistence service.
+     * Large imports are written in bulk, with COPY on PostgreSQL. Undefined states are skipped.
+     *
+     * @param item the item the values belong to
+     * @param values the values to store, of values with the same timestamp only the last one is kept
+     * @return the number of values stored, or -1 if the import failed; chunks written before a failure stay stored
+     */
+    int storeHistory(Item item, Iterable<HistoricItem> values);
+}
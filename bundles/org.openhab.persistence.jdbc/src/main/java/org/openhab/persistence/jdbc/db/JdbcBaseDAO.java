@@ -13,41 +13,53 @@
 package org.openhab.persistence.jdbc.db;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.knowm.yank.Yank;
 import org.openhab.core.items.GroupItem;
 import org.openhab.core.items.Item;
 import org.openhab.core.library.items.ColorItem;
-import org.openhab.core.library.items.ContactItem;
-import org.openhab.core.library.items.DateTimeItem;
 import org.openhab.core.library.items.DimmerItem;
 import org.openhab.core.library.items.NumberItem;
 import org.openhab.core.library.items.RollershutterItem;
-import org.openhab.core.library.items.StringItem;
-import org.openhab.core.library.items.SwitchItem;
-import org.openhab.core.library.types.DateTimeType;
 import org.openhab.core.library.types.DecimalType;
-import org.openhab.core.library.types.HSBType;
-import org.openhab.core.library.types.OnOffType;
-import org.openhab.core.library.types.OpenClosedType;
 import org.openhab.core.library.types.PercentType;
-import org.openhab.core.library.types.StringType;
 import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.FilterCriteria.Ordering;
 import org.openhab.core.persistence.HistoricItem;
 import org.openhab.core.types.State;
+import org.openhab.persistence.jdbc.model.Aggregation;
+import org.openhab.persistence.jdbc.model.ItemTableVO;
 import org.openhab.persistence.jdbc.model.ItemVO;
 import org.openhab.persistence.jdbc.model.ItemsVO;
 import org.openhab.persistence.jdbc.model.JdbcItem;
+import org.openhab.persistence.jdbc.model.JdbcValueCodec;
+import org.openhab.persistence.jdbc.model.PartitionInterval;
+import org.openhab.persistence.jdbc.model.RollupInterval;
 import org.openhab.persistence.jdbc.utils.DbMetaData;
 import org.openhab.persistence.jdbc.utils.StringUtilsExt;
 import org.slf4j.Logger;
@@ -64,6 +76,47 @@ public class JdbcBaseDAO {
     public Properties databaseProps = new Properties();
     protected String urlSuffix = "";
     public Map<String, String> sqlTypes = new HashMap<>();
+    protected final Map<String, ItemTableVO> itemTables = new ConcurrentHashMap<>();
+    // codec to read the values of an item class
+    private final Map<Class<?>, JdbcValueCodec> readCodecs = new ConcurrentHashMap<>();
+    // rendered history queries, keyed by table and query shape
+    protected final Map<String, String> histItemQueries = new ConcurrentHashMap<>();
+    private static final int MAX_PAGE_CURSORS = 256;
+    private static final int LAST_VALUES_UNION_SIZE = 50;
+    private static final int LAST_VALUES_ID_SIZE = 500;
+    private static final DateTimeFormatter PARTITION_BOUND = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final Pattern PARTITION_PERIOD = Pattern.compile("p(\\d{8}|\\d{6})$");
+    // tables which are no item tables: narrow schema storage, rollup and partition tables
+    private static final Pattern STORAGE_TABLE = Pattern.compile("^history_[a-z]+$");
+    private static final Pattern ROLLUP_TABLE = Pattern.compile("_\\d{1,4}[mhd]$");
+    private static final Pattern PARTITION_TABLE = Pattern.compile("_p(\\d{8}|\\d{6})$");
+    // a time column with fractional seconds, e.g. TIMESTAMP(3)
+    private static final Pattern FRACTIONAL_SECONDS = Pattern.compile("\\(\\s*[1-9]\\s*\\)");
+    // aggregates of a rollup table, rolled up into a coarser one
+    private static final String ROLLUP_COLUMNS = "SUM(cnt), SUM(sumv), MIN(minv), MAX(maxv)";
+    // 2 parameters per row, keeps statements below the bind parameter limit of all databases, SQLite: 999
+    private static final int INSERT_ROWS_SIZE = 250;
+    // time column of the last row of recently read pages, keyed by table, filter and page number
+    private final Map<String, Object> pageCursors = Collections
+            .synchronizedMap(new LinkedHashMap<String, Object>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+                    return size() > MAX_PAGE_CURSORS;
+                }
+            });
+
+    // narrow schema: the values of all items of an item type are stored in one table keyed by (itemid, time)
+    protected boolean narrowSchema = false;
+    // item id per item table name
+    private final Map<String, Integer> itemIds = new ConcurrentHashMap<>();
+    private final Set<String> historyTables = ConcurrentHashMap.newKeySet();
+    private final Set<String> rollupTables = ConcurrentHashMap.newKeySet();
+    // connection pool of history queries, null if they share the default pool with writes
+    private volatile String readPool = null;
+    // period of the partitions of new item tables, null if partitioning is disabled
+    protected PartitionInterval partitionInterval = null;
 
     // Get Database Meta data
     protected DbMetaData dbMeta;
@@ -77,7 +130,25 @@ public class JdbcBaseDAO {
     protected String sqlGetItemIDTableNames;
     protected String sqlGetItemTables;
     protected String sqlCreateItemTable;
+    protected String sqlRenameItemTable;
     protected String sqlInsertItemValue;
+    // multi-row upsert, null if the database has none
+    protected String sqlInsertItemValueRows;
+    protected String sqlInsertItemValueRow;
+    protected String sqlTimeBucket;
+    // true if sqlTimeBucket counts seconds from 1970-01-01 in local time instead of UTC
+    protected boolean sqlTimeBucketLocal = false;
+    protected String sqlDeleteItemValuesBefore;
+    // range partitioning of item tables, null if the database has none
+    protected String sqlCreatePartitionedItemTable;
+    protected String sqlGetPartitions;
+    protected String sqlAddPartition;
+    protected String sqlDropPartition;
+    // rollup tables of count, sum, minimum and maximum of the values per time bucket
+    protected String sqlCreateRollupTable;
+    protected String sqlInsertRollupValues;
+    protected String sqlDeleteRollupValuesFrom;
+    protected String sqlRollupValueColumns;
 
     /********
      * INIT *
@@ -135,8 +206,24 @@ public class JdbcBaseDAO {
         sqlDeleteItemsEntry = "DELETE FROM items WHERE ItemName=#itemname#";
         sqlGetItemIDTableNames = "SELECT itemid, itemname FROM #itemsManageTable#";
         sqlGetItemTables = "SELECT table_name FROM information_schema.tables WHERE table_type='BASE TABLE' AND table_schema='#jdbcUriDatabaseName#' AND NOT table_name='#itemsManageTable#'";
-        sqlCreateItemTable = "CREATE TABLE IF NOT EXISTS #tableName# (time #tablePrimaryKey# NOT NULL, value #dbType#, PRIMARY KEY(time))";
-        sqlInsertItemValue = "INSERT INTO #tableName# (TIME, VALUE) VALUES( #tablePrimaryValue#, ? ) ON DUPLICATE KEY UPDATE VALUE= ?";
+        sqlCreateItemTable = "CREATE TABLE IF NOT EXISTS #tableName# (#itemIdColumn#time #tablePrimaryKey# NOT NULL, value #dbType#, PRIMARY KEY(#itemIdKey#time))";
+        sqlRenameItemTable = "ALTER TABLE #tableName# RENAME TO #newTableName#";
+        sqlInsertItemValue = "INSERT INTO #tableName# (#itemIdKey#TIME, VALUE) VALUES( #itemIdValue##tablePrimaryValue#, ? ) ON DUPLICATE KEY UPDATE VALUE= ?";
+        sqlInsertItemValueRows = "INSERT INTO #tableName# (#itemIdKey#TIME, VALUE) VALUES #valueRows# ON DUPLICATE KEY UPDATE VALUE=VALUES(VALUE)";
+        sqlInsertItemValueRow = "( #itemIdValue##timeValue#, ? )";
+        sqlTimeBucket = "FLOOR(UNIX_TIMESTAMP(time)/#bucketSeconds#)";
+        sqlDeleteItemValuesBefore = "DELETE FROM #tableName# WHERE #itemIdWhere#time<?";
+        // partitions are added by splitting the catch-all partition pmax
+        sqlCreatePartitionedItemTable = "CREATE TABLE IF NOT EXISTS #tableName# (time #tablePrimaryKey# NOT NULL, value #dbType#, PRIMARY KEY(time)) "
+                + "PARTITION BY RANGE (UNIX_TIMESTAMP(time)) (PARTITION pmax VALUES LESS THAN MAXVALUE)";
+        sqlGetPartitions = "SELECT partition_name FROM information_schema.partitions WHERE table_schema=DATABASE() AND table_name='#tableName#' AND partition_name IS NOT NULL";
+        sqlAddPartition = "ALTER TABLE #tableName# REORGANIZE PARTITION pmax INTO "
+                + "(PARTITION #partitionName# VALUES LESS THAN (UNIX_TIMESTAMP('#partitionEnd#')), PARTITION pmax VALUES LESS THAN MAXVALUE)";
+        sqlDropPartition = "ALTER TABLE #tableName# DROP PARTITION #partitionName#";
+        sqlCreateRollupTable = "CREATE TABLE IF NOT EXISTS #tableName# (#itemIdColumn#time #tablePrimaryKey# NOT NULL, cnt INTEGER, sumv #rollupType#, minv #rollupType#, maxv #rollupType#, PRIMARY KEY(#itemIdKey#time))";
+        sqlInsertRollupValues = "INSERT INTO #tableName# (#itemIdKey#time, cnt, sumv, minv, maxv) SELECT #itemIdValue#MIN(time), #rollupColumns# FROM #sourceTable##timeFilter# GROUP BY #timeBucket#";
+        sqlRollupValueColumns = "COUNT(value), SUM(value), MIN(value), MAX(value)";
+        sqlDeleteRollupValuesFrom = "DELETE FROM #tableName# WHERE #itemIdWhere#time>=?";
     }
 
     /**
@@ -156,6 +243,7 @@ public class JdbcBaseDAO {
         sqlTypes.put("SWITCHITEM", "VARCHAR(6)");
         sqlTypes.put("tablePrimaryKey", "TIMESTAMP");
         sqlTypes.put("tablePrimaryValue", "NOW()");
+        sqlTypes.put("tableRollupValue", "DOUBLE");
     }
 
     /**
@@ -302,193 +390,962 @@ public class JdbcBaseDAO {
      * ITEM DAOs *
      *************/
     public void doUpdateItemTableNames(List<ItemVO> vol) {
-        String sql = updateItemTableNamesProvider(vol);
-        Yank.execute(sql, null);
+        for (ItemVO vo : vol) {
+            doRenameItemTable(vo);
+        }
+        clearItemTables();
+    }
+
+    /**
+     * Renames an item table. Unlike Yank, which returns 0 for both a rename and a failure, a failing rename is
+     * reported.
+     *
+     * @return false if the table could not be renamed, the error has been logged
+     */
+    public boolean doRenameItemTable(ItemVO vo) {
+        String sql = StringUtilsExt.replaceArrayMerge(sqlRenameItemTable,
+                new String[] { "#tableName#", "#newTableName#" },
+                new String[] { vo.getTableName(), vo.getNewTableName() });
+        logger.debug("JDBC::doRenameItemTable sql={}", sql);
+        try (Connection con = Yank.getDefaultConnectionPool().getConnection();
+                Statement st = con.createStatement()) {
+            st.execute(sql);
+            return true;
+        } catch (SQLException e) {
+            logger.warn("JDBC::doRenameItemTable: renaming '{}' to '{}' failed: {}", vo.getTableName(),
+                    vo.getNewTableName(), e.getMessage());
+            return false;
+        }
     }
 
     public void doCreateItemTable(ItemVO vo) {
-        String sql = StringUtilsExt.replaceArrayMerge(sqlCreateItemTable,
+        String table = storageTableProvider(vo.getTableName(), vo.getItemType());
+        if (narrowSchema && historyTables.contains(table)) {
+            return;
+        }
+        String sql = itemKeyProvider(StringUtilsExt.replaceArrayMerge(
+                isPartitioningEnabled() ? sqlCreatePartitionedItemTable : sqlCreateItemTable,
                 new String[] { "#tableName#", "#dbType#", "#tablePrimaryKey#" },
-                new String[] { vo.getTableName(), vo.getDbType(), sqlTypes.get("tablePrimaryKey") });
+                new String[] { table, vo.getDbType(), sqlTypes.get("tablePrimaryKey") }), vo.getTableName());
         logger.debug("JDBC::doCreateItemTable sql={}", sql);
         Yank.execute(sql, null);
+        if (narrowSchema) {
+            historyTables.add(table);
+        }
+        if (isPartitioningEnabled()) {
+            doEnsurePartitions(table);
+        }
     }
 
-    public void doStoreItemValue(Item item, ItemVO vo) {
-        vo = storeItemValueProvider(item, vo);
-        String sql = StringUtilsExt.replaceArrayMerge(sqlInsertItemValue,
-                new String[] { "#tableName#", "#tablePrimaryValue#" },
-                new String[] { vo.getTableName(), sqlTypes.get("tablePrimaryValue") });
-        Object[] params = new Object[] { vo.getValue(), vo.getValue() };
-        logger.debug("JDBC::doStoreItemValue sql={} value='{}'", sql, vo.getValue());
-        Yank.execute(sql, params);
+    /**
+     * Adds partitions up to the end of the next period to a partitioned item table.
+     * The first partition has no lower bound, each further one starts where the previous one ends.
+     *
+     * @return false if the table is not partitioned or partitioning is disabled
+     */
+    public boolean doEnsurePartitions(String table) {
+        if (!isPartitioningEnabled()) {
+            return false;
+        }
+        List<String> periods = doGetPartitionPeriods(table);
+        if (periods == null) {
+            return false;
+        }
+        LocalDateTime last = periods.isEmpty() ? null : PartitionInterval.periodEnd(periods.get(periods.size() - 1));
+        LocalDateTime current = partitionInterval.periodStart(LocalDateTime.now());
+        for (LocalDateTime start = current; !start.isAfter(partitionInterval.next(current)); start = partitionInterval
+                .next(start)) {
+            LocalDateTime end = partitionInterval.next(start);
+            if (last != null && !end.isAfter(last)) {
+                continue;
+            }
+            String sql = StringUtilsExt.replaceArrayMerge(sqlAddPartition,
+                    new String[] { "#partitionName#", "#tableName#", "#partitionName#", "#partitionStart#",
+                            "#partitionEnd#" },
+                    new String[] { partitionNameProvider(table, partitionInterval.format(start)), table,
+                            partitionNameProvider(table, partitionInterval.format(start)),
+                            last == null ? "MINVALUE" : "'" + PARTITION_BOUND.format(last) + "'",
+                            PARTITION_BOUND.format(end) });
+            logger.debug("JDBC::doEnsurePartitions sql={}", sql);
+            Yank.execute(sql, null);
+            last = end;
+        }
+        return true;
+    }
+
+    /**
+     * Drops the partitions of an item table which only hold values older than cutoff.
+     */
+    public void doDropPartitionsBefore(String table, LocalDateTime cutoff) {
+        List<String> periods = doGetPartitionPeriods(table);
+        if (periods == null) {
+            return;
+        }
+        for (String period : periods) {
+            LocalDateTime end = PartitionInterval.periodEnd(period);
+            if (end != null && !end.isAfter(cutoff)) {
+                String sql = StringUtilsExt.replaceArrayMerge(sqlDropPartition,
+                        new String[] { "#partitionName#", "#tableName#", "#partitionName#" },
+                        new String[] { partitionNameProvider(table, period), table,
+                                partitionNameProvider(table, period) });
+                logger.debug("JDBC::doDropPartitionsBefore sql={}", sql);
+                Yank.execute(sql, null);
+            }
+        }
+    }
+
+    /**
+     * @return sorted periods of the partitions of an item table, null if the table is not partitioned
+     */
+    private List<String> doGetPartitionPeriods(String table) {
+        if (sqlGetPartitions == null) {
+            return null;
+        }
+        String sql = StringUtilsExt.replaceArrayMerge(sqlGetPartitions, new String[] { "#tableName#" },
+                new String[] { table });
+        logger.debug("JDBC::doGetPartitionPeriods sql={}", sql);
+        List<Object[]> m = Yank.queryObjectArrays(sql, null);
+        if (m.isEmpty()) {
+            return null;
+        }
+        List<String> periods = new ArrayList<>();
+        for (Object[] row : m) {
+            if (row[0] != null) {
+                Matcher matcher = PARTITION_PERIOD.matcher(row[0].toString());
+                if (matcher.find() && PartitionInterval.periodEnd(matcher.group(1)) != null) {
+                    periods.add(matcher.group(1));
+                }
+            }
+        }
+        // periods of different intervals sort by their end
+        periods.sort((a, b) -> PartitionInterval.periodEnd(a).compareTo(PartitionInterval.periodEnd(b)));
+        return periods;
+    }
+
+    /**
+     * Deletes the values of an item table older than cutoff, used for tables which are not partitioned.
+     *
+     * @return number of deleted values
+     */
+    public int doDeleteItemValuesBefore(Item item, String table, LocalDateTime cutoff) {
+        String sql = itemKeyProvider(StringUtilsExt.replaceArrayMerge(sqlDeleteItemValuesBefore,
+                new String[] { "#tableName#" }, new String[] { storageTableProvider(table, getItemType(item)) }),
+                table);
+        logger.debug("JDBC::doDeleteItemValuesBefore sql={} cutoff={}", sql, cutoff);
+        return Yank.execute(sql,
+                new Object[] { timeAsObject(Date.from(cutoff.atZone(ZoneId.systemDefault()).toInstant())) });
     }
 
+    /**
+     * Creates a rollup table of an item table, in narrow schema the one shared by the items of its item type.
+     */
+    public void doCreateRollupTable(Item item, String table, RollupInterval r) {
+        String rollup = rollupTableProvider(table, getItemType(item), r);
+        if (rollupTables.contains(rollup)) {
+            return;
+        }
+        String sql = itemKeyProvider(StringUtilsExt.replaceArrayMerge(sqlCreateRollupTable,
+                new String[] { "#tableName#", "#tablePrimaryKey#" },
+                new String[] { rollup, sqlTypes.get("tablePrimaryKey") }), table)
+                        .replace("#rollupType#", sqlTypes.get("tableRollupValue"));
+        logger.debug("JDBC::doCreateRollupTable sql={}", sql);
+        Yank.execute(sql, null);
+        rollupTables.add(rollup);
+    }
+
+    /**
+     * @return end of the newest time bucket of an item in a rollup table, null if it has none
+     */
+    public Date doGetRollupHighWaterMark(Item item, String table, RollupInterval r) {
+        String sql = "SELECT MAX(time) FROM " + rollupSourceProvider(table, item, r);
+        logger.debug("JDBC::doGetRollupHighWaterMark sql={}", sql);
+        List<Object[]> m = Yank.queryObjectArrays(sql, null);
+        if (m.isEmpty() || m.get(0)[0] == null) {
+            return null;
+        }
+        Date start = timeBucketStart(objectAsDate(m.get(0)[0]), r.getSeconds());
+        return new Date(start.getTime() + r.getSeconds() * 1000L);
+    }
+
+    /**
+     * Aggregates the values of an item from the item table, or from the finer rollup table source, into the time
+     * buckets of a rollup table. from and to should be bucket bounds, so every bucket is rolled up once. Buckets
+     * from on which were rolled up before are replaced in the same transaction, so late values can be rolled up
+     * again by lowering from.
+     *
+     * @param source finer rollup table whose buckets divide those of r, null to roll up the item table
+     * @param from start of the values to roll up, null for all values before to
+     * @return number of added buckets, -1 if the rollup failed, the error has been logged
+     */
+    public int doRollupItemValues(Item item, String table, RollupInterval r, RollupInterval source, Date from,
+            Date to) {
+        String rollup = rollupTableProvider(table, getItemType(item), r);
+        String key = "rollup|" + table + '|' + r + '|' + source + '|' + (from != null);
+        String sql = histItemQueries.computeIfAbsent(key, k -> {
+            String timeFilter = (from != null ? " WHERE TIME>=? AND" : " WHERE") + " TIME<?";
+            String queryString = itemKeyProvider(StringUtilsExt.replaceArrayMerge(sqlInsertRollupValues,
+                    new String[] { "#tableName#", "#rollupColumns#", "#sourceTable#", "#timeFilter#",
+                            "#timeBucket#" },
+                    new String[] { rollup, source == null ? sqlRollupValueColumns : ROLLUP_COLUMNS,
+                            source == null ? tableSourceProvider(table, item)
+                                    : rollupSourceProvider(table, item, source),
+                            timeFilter, timeBucketProvider(r.getSeconds()) }),
+                    table);
+            logger.debug("JDBC::doRollupItemValues key = {}, queryString = {}", k, queryString);
+            return queryString;
+        });
+        try (Connection con = Yank.getDefaultConnectionPool().getConnection()) {
+            con.setAutoCommit(false);
+            try {
+                if (from != null) {
+                    String delete = itemKeyProvider(StringUtilsExt.replaceArrayMerge(sqlDeleteRollupValuesFrom,
+                            new String[] { "#tableName#" }, new String[] { rollup }), table);
+                    try (PreparedStatement ps = con.prepareStatement(delete)) {
+                        ps.setObject(1, timeAsObject(from));
+                        ps.executeUpdate();
+                    }
+                }
+                int cnt;
+                try (PreparedStatement ps = con.prepareStatement(sql)) {
+                    int i = 1;
+                    if (from != null) {
+                        ps.setObject(i++, timeAsObject(from));
+                    }
+                    ps.setObject(i, timeAsObject(to));
+                    cnt = ps.executeUpdate();
+                }
+                con.commit();
+                return cnt;
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logger.error("JDBC::doRollupItemValues: rolling up '{}' into '{}' failed: {}", table, rollup,
+                    e.getMessage());
+            return -1;
+        }
+    }
+
+    public boolean doStoreItemValue(Item item, ItemVO vo) {
+        return doStoreItemValue(item, item.getState(), vo);
+    }
+
+    /**
+     * Stores a state of an item with the database time, binding it with the codec of the item table.
+     * Like Yank, a failing insert is logged and not thrown.
+     *
+     * @return false if the value could not be written
+     */
+    public boolean doStoreItemValue(Item item, State state, ItemVO vo) {
+        ItemTableVO t = getItemTable(item, vo.getTableName());
+        vo.setValueTypes(t.getDbType(), t.getJavaType());
+        vo.setItemType(t.getItemType());
+        if (logger.isDebugEnabled()) {
+            logger.debug("JDBC::doStoreItemValue sql={} value='{}'", t.getSqlInsertItemValue(), state);
+        }
+        JdbcValueCodec codec = t.getCodec();
+        try (Connection con = Yank.getDefaultConnectionPool().getConnection();
+                PreparedStatement ps = con.prepareStatement(t.getSqlInsertItemValue())) {
+            for (int i = 1; i <= t.getValueParamCount(); i++) {
+                codec.bind(ps, i, state);
+            }
+            ps.executeUpdate();
+            return true;
+        } catch (SQLException e) {
+            logger.error("JDBC::doStoreItemValue: storing item '{}' into '{}' failed: {}", item.getName(),
+                    t.getTableName(), e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Resolves the value of the given item and captures the current time, so the value can be written later on by
+     * {@link #doStoreItemValues(List)}.
+     */
+    public ItemVO doPrepareItemValue(Item item, ItemVO vo) {
+        return doPrepareItemValue(item, item.getState(), new Date(), vo);
+    }
+
+    /**
+     * Resolves a given state of an item at a given time, e.g. to import historic values.
+     */
+    public ItemVO doPrepareItemValue(Item item, State state, Date time, ItemVO vo) {
+        vo = storeItemValueProvider(getItemTable(item, vo.getTableName()), item, state, vo);
+        vo.setTime(time);
+        vo.setItem(item);
+        vo.setState(state);
+        return vo;
+    }
+
+    /**
+     * Stores a list of prepared values, all destined to the same item table, as one JDBC batch.
+     *
+     * @return false if the values could not be written, the error has been logged
+     */
+    public boolean doStoreItemValues(List<ItemVO> vol) {
+        ItemTableVO t = getPreparedItemTable(vol.get(0));
+        if (sqlInsertItemValueRows != null && vol.size() > 1) {
+            return doStoreItemValueRows(t, vol);
+        }
+        logger.debug("JDBC::doStoreItemValues sql={} size={}", t.getSqlInsertItemValues(), vol.size());
+        // Yank returns null instead of throwing if the batch failed
+        return Yank.executeBatch(t.getSqlInsertItemValues(), storeItemValuesParams(t, vol)) != null;
+    }
+
+    /**
+     * Stores a list of prepared values with multi-row upserts of up to INSERT_ROWS_SIZE rows each.
+     * Of values with the same time only the last one is kept, as an upsert may not touch a row twice.
+     *
+     * @return false if a chunk could not be written, the chunks before it have been written
+     */
+    protected boolean doStoreItemValueRows(ItemTableVO t, List<ItemVO> vol) {
+        Map<Long, ItemVO> rows = new LinkedHashMap<>();
+        for (ItemVO vo : vol) {
+            rows.put(vo.getTime().getTime(), vo);
+        }
+        List<ItemVO> values = new ArrayList<>(rows.values());
+        for (int from = 0; from < values.size(); from += INSERT_ROWS_SIZE) {
+            List<ItemVO> chunk = values.subList(from, Math.min(from + INSERT_ROWS_SIZE, values.size()));
+            String sql = insertItemValueRowsProvider(t, chunk.size());
+            Object[] params = new Object[chunk.size() * 2];
+            int i = 0;
+            for (ItemVO vo : chunk) {
+                params[i++] = timeAsObject(vo.getTime());
+                params[i++] = vo.getValue();
+            }
+            logger.debug("JDBC::doStoreItemValueRows table={} rows={}", t.getTableName(), chunk.size());
+            try (Connection con = Yank.getDefaultConnectionPool().getConnection();
+                    PreparedStatement ps = con.prepareStatement(sql)) {
+                for (int p = 0; p < params.length; p++) {
+                    ps.setObject(p + 1, params[p]);
+                }
+                ps.executeUpdate();
+            } catch (SQLException e) {
+                logger.error("JDBC::doStoreItemValueRows: storing {} rows into '{}' failed: {}", chunk.size(),
+                        t.getTableName(), e.getMessage());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Queries the values of an item. A page whose previous page was read recently seeks to the values after the end
+     * of that page, other pages skip the values of the previous pages with OFFSET. Both return the same values
+     * unless the values of the item changed between the requests.
+     */
     public List<HistoricItem> doGetHistItemFilterQuery(Item item, FilterCriteria filter, int numberDecimalcount,
             String table, String name) {
-        String sql = histItemFilterQueryProvider(filter, numberDecimalcount, table, name);
-        logger.debug("JDBC::doGetHistItemFilterQuery sql={}", sql);
-        List<Object[]> m = Yank.queryObjectArrays(sql, null);
+        boolean paged = filter.getPageSize() != 0x7fffffff;
+        Object seekTime = paged && filter.getPageNumber() > 0
+                ? pageCursors.get(pageCursorKey(filter, table, filter.getPageNumber() - 1))
+                : null;
+        String sql = histItemFilterQueryProvider(filter, numberDecimalcount, tableSourceProvider(table, item), name,
+                seekTime != null);
+        Object[] params = histItemFilterParams(filter, seekTime);
+        logger.debug("JDBC::doGetHistItemFilterQuery sql={} params={}", sql, params);
+        List<Object[]> m = queryReadObjectArrays(sql, params);
 
         List<HistoricItem> items = new ArrayList<>();
         for (int i = 0; i < m.size(); i++) {
             items.add(new JdbcItem(item.getName(), getState(item, m.get(i)[1]), objectAsDate(m.get(i)[0])));
         }
+        if (paged && m.size() == filter.getPageSize()) {
+            // remember where this page ends, so the next page can seek instead of skipping rows
+            pageCursors.put(pageCursorKey(filter, table, filter.getPageNumber()), m.get(m.size() - 1)[0]);
+        }
+        return items;
+    }
+
+    /**
+     * Reads the newest value of many item tables at once, using UNION ALL queries over tables of the same value type.
+     *
+     * @param tableItems item per table name
+     */
+    public List<HistoricItem> doGetLastItemValues(Map<String, Item> tableItems, int numberDecimalcount) {
+        if (narrowSchema) {
+            return doGetLastNarrowItemValues(tableItems, numberDecimalcount);
+        }
+        // the value columns of a union have to be of the same type
+        Map<String, List<String>> typeTables = new LinkedHashMap<>();
+        for (Map.Entry<String, Item> e : tableItems.entrySet()) {
+            typeTables.computeIfAbsent(getDataType(e.getValue()), k -> new ArrayList<>()).add(e.getKey());
+        }
+        List<HistoricItem> items = new ArrayList<>();
+        for (List<String> tables : typeTables.values()) {
+            for (int from = 0; from < tables.size(); from += LAST_VALUES_UNION_SIZE) {
+                List<String> chunk = tables.subList(from, Math.min(from + LAST_VALUES_UNION_SIZE, tables.size()));
+                String sql = lastItemValuesQueryProvider(chunk);
+                logger.debug("JDBC::doGetLastItemValues sql={}", sql);
+                List<Object[]> m = queryReadObjectArrays(sql, null);
+                for (Object[] row : m) {
+                    Item item = tableItems.get(chunk.get(((Number) row[0]).intValue()));
+                    if (row[2] != null) {
+                        items.add(toHistoricItem(item, row[2], objectAsDate(row[1]), numberDecimalcount));
+                    }
+                }
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Reads the newest value of many items at once, with one query per item type table in narrow schema.
+     */
+    private List<HistoricItem> doGetLastNarrowItemValues(Map<String, Item> tableItems, int numberDecimalcount) {
+        Map<String, List<Integer>> typeIds = new LinkedHashMap<>();
+        Map<Integer, Item> idItems = new HashMap<>();
+        for (Map.Entry<String, Item> e : tableItems.entrySet()) {
+            Integer id = itemIds.get(e.getKey());
+            if (id != null) {
+                typeIds.computeIfAbsent(storageTableProvider(e.getKey(), getItemType(e.getValue())),
+                        k -> new ArrayList<>()).add(id);
+                idItems.put(id, e.getValue());
+            }
+        }
+        List<HistoricItem> items = new ArrayList<>();
+        for (Map.Entry<String, List<Integer>> e : typeIds.entrySet()) {
+            List<Integer> ids = e.getValue();
+            for (int from = 0; from < ids.size(); from += LAST_VALUES_ID_SIZE) {
+                List<Integer> chunk = ids.subList(from, Math.min(from + LAST_VALUES_ID_SIZE, ids.size()));
+                String sql = lastNarrowItemValuesQueryProvider(e.getKey(), chunk);
+                logger.debug("JDBC::doGetLastNarrowItemValues sql={}", sql);
+                List<Object[]> m = queryReadObjectArrays(sql, null);
+                for (Object[] row : m) {
+                    Item item = idItems.get(((Number) row[0]).intValue());
+                    if (item != null && row[2] != null) {
+                        items.add(toHistoricItem(item, row[2], objectAsDate(row[1]), numberDecimalcount));
+                    }
+                }
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Like {@link #doGetHistItemFilterQuery} but returns the rows lazily from a forward-only result set, fetched
+     * fetchSize rows at a time. The returned stream holds a pooled connection until it is exhausted or closed.
+     */
+    public JdbcItemStream doStreamHistItemFilterQuery(Item item, FilterCriteria filter, int numberDecimalcount,
+            String table, String name, int fetchSize) throws SQLException {
+        String sql = histItemFilterQueryProvider(filter, numberDecimalcount, tableSourceProvider(table, item), name,
+                false);
+        Object[] params = histItemFilterParams(filter, null);
+        logger.debug("JDBC::doStreamHistItemFilterQuery sql={} params={} fetchSize={}", sql, params, fetchSize);
+        Connection con = getReadConnection();
+        try {
+            // drivers like PostgreSQL only use a cursor within a transaction
+            con.setAutoCommit(false);
+            PreparedStatement st = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            st.setFetchSize(streamFetchSizeProvider(fetchSize));
+            for (int i = 0; i < params.length; i++) {
+                st.setObject(i + 1, params[i]);
+            }
+            return new JdbcItemStream(this, item, getReadCodec(item), con, st, st.executeQuery());
+        } catch (SQLException e) {
+            con.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Aggregates the values of an item table per time bucket of bucketSeconds, on the database side.
+     * Each returned value carries the time of its bucket's first (AVG, MIN, MAX) or last (LAST) stored value.
+     */
+    public List<HistoricItem> doGetHistItemAggregateQuery(Item item, FilterCriteria filter, Aggregation aggregation,
+            int bucketSeconds, String table) {
+        String sql = histItemAggregateQueryProvider(filter, aggregation, bucketSeconds,
+                tableSourceProvider(table, item));
+        Object[] params = histItemTimeFilterParams(filter).toArray();
+        logger.debug("JDBC::doGetHistItemAggregateQuery sql={} params={}", sql, params);
+        List<Object[]> m = queryReadObjectArrays(sql, params);
+
+        List<HistoricItem> items = new ArrayList<>();
+        for (int i = 0; i < m.size(); i++) {
+            Object v = m.get(i)[1];
+            if (v == null) {
+                continue;
+            }
+            State state = aggregation.isNumeric() ? getAggregateState(item, v) : getState(item, v);
+            items.add(new JdbcItem(item.getName(), state, objectAsDate(m.get(i)[0])));
+        }
         return items;
     }
 
+    /**
+     * Aggregates the values of an item per time bucket of bucketSeconds like
+     * {@link #doGetHistItemAggregateQuery(Item, FilterCriteria, Aggregation, int, String)}, for AVG, MIN and MAX.
+     * Values before highWaterMark are read from the rollup table r, whose buckets divide bucketSeconds, and newer
+     * values from the item table. Buckets split by the high-water mark are merged.
+     */
+    public List<HistoricItem> doGetRollupAggregateQuery(Item item, FilterCriteria filter, Aggregation aggregation,
+            int bucketSeconds, String table, RollupInterval r, Date highWaterMark) {
+        Map<Long, RollupBucket> buckets = new TreeMap<>();
+        List<Object> params = histItemTimeFilterParams(filter);
+        params.add(0, timeAsObject(highWaterMark));
+        for (boolean tail : new boolean[] { false, true }) {
+            String sql = rollupAggregateQueryProvider(filter, bucketSeconds,
+                    tail ? tableSourceProvider(table, item) : rollupSourceProvider(table, item, r),
+                    tail ? sqlRollupValueColumns : ROLLUP_COLUMNS, tail);
+            logger.debug("JDBC::doGetRollupAggregateQuery sql={} params={}", sql, params);
+            for (Object[] row : queryReadObjectArrays(sql, params.toArray())) {
+                if (row[4] == null) {
+                    continue;
+                }
+                buckets.computeIfAbsent(((Number) row[0]).longValue(), k -> new RollupBucket()).add(
+                        objectAsDate(row[1]), ((Number) row[2]).longValue(), ((Number) row[3]).doubleValue(),
+                        ((Number) row[4]).doubleValue(), ((Number) row[5]).doubleValue());
+            }
+        }
+
+        List<HistoricItem> items = new ArrayList<>(buckets.size());
+        for (RollupBucket b : buckets.values()) {
+            double v = aggregation == Aggregation.MIN ? b.min
+                    : aggregation == Aggregation.MAX ? b.max : b.sum / b.cnt;
+            items.add(new JdbcItem(item.getName(), getAggregateState(item, v), b.time));
+        }
+        if (filter.getOrdering() != Ordering.ASCENDING) {
+            Collections.reverse(items);
+        }
+        return items;
+    }
+
+    /**
+     * Partial aggregates of a time bucket, read from a rollup table and the item table.
+     */
+    private static class RollupBucket {
+        private Date time;
+        private long cnt;
+        private double sum;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        private void add(Date first, long cnt, double sum, double min, double max) {
+            if (time == null || first.before(time)) {
+                time = first;
+            }
+            this.cnt += cnt;
+            this.sum += sum;
+            this.min = Math.min(this.min, min);
+            this.max = Math.max(this.max, max);
+        }
+    }
+
     /*************
      * Providers *
      *************/
-    static final DateTimeFormatter JDBC_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    /**
+     * Renders the parameterized history query of a table, once per query shape. Parameters are bound in the order
+     * of {@link #histItemFilterParams(FilterCriteria, Object)}.
+     *
+     * @param seek true if the page starts after the time of the last row of the previous page instead of skipping
+     *            pageNumber * pageSize rows
+     */
+    protected String histItemFilterQueryProvider(FilterCriteria filter, int numberDecimalcount, String table,
+            String simpleName, boolean seek) {
+        boolean asc = filter.getOrdering() == Ordering.ASCENDING;
+        boolean paged = filter.getPageSize() != 0x7fffffff;
+        String key = table + '|' + simpleName + '|' + numberDecimalcount + '|' + (filter.getBeginDate() != null) + '|'
+                + (filter.getEndDate() != null) + '|' + seek + '|' + asc + '|' + paged;
+        return histItemQueries.computeIfAbsent(key, k -> {
+            String filterString = histItemTimeFilterProvider(filter);
+            if (seek) {
+                filterString += filterString.isEmpty() ? " WHERE" : " AND";
+                filterString += asc ? " TIME>?" : " TIME<?";
+            }
+            filterString += asc ? " ORDER BY time ASC" : " ORDER BY time DESC";
+            if (paged) {
+                filterString += limitClauseProvider();
+            }
+            String queryString = histItemSelectProvider(numberDecimalcount, table, simpleName) + filterString;
+            logger.debug("JDBC::histItemFilterQueryProvider key = {}, queryString = {}", k, queryString);
+            return queryString;
+        });
+    }
+
+    /**
+     * @param seekTime time column of the last row of the previous page, or null
+     */
+    protected Object[] histItemFilterParams(FilterCriteria filter, Object seekTime) {
+        List<Object> params = histItemTimeFilterParams(filter);
+        if (seekTime != null) {
+            params.add(seekTime);
+        }
+        if (filter.getPageSize() != 0x7fffffff) {
+            int offset = seekTime != null ? 0 : filter.getPageNumber() * filter.getPageSize();
+            params.addAll(Arrays.asList(limitParamsProvider(offset, filter.getPageSize())));
+        }
+        return params.toArray();
+    }
+
+    /**
+     * SELECT time, ROUND(value,3) FROM number_item_0114
+     */
+    protected String histItemSelectProvider(int numberDecimalcount, String table, String simpleName) {
+        // rounding HALF UP
+        return "NUMBERITEM".equalsIgnoreCase(simpleName) && numberDecimalcount > -1
+                ? "SELECT time, ROUND(value," + numberDecimalcount + ") FROM " + table
+                : "SELECT time, value FROM " + table;
+    }
+
+    protected String limitClauseProvider() {
+        return " LIMIT ?,?";
+    }
+
+    protected Object[] limitParamsProvider(int offset, int size) {
+        return new Object[] { offset, size };
+    }
+
+    protected int streamFetchSizeProvider(int fetchSize) {
+        return fetchSize;
+    }
 
-    private String histItemFilterQueryProvider(FilterCriteria filter, int numberDecimalcount, String table,
-            String simpleName) {
+    /**
+     * SELECT MIN(time), AVG(value) FROM number_item_0114 WHERE TIME>'...' GROUP BY FLOOR(UNIX_TIMESTAMP(time)/900)
+     * ORDER BY 1 ASC
+     */
+    protected String histItemAggregateQueryProvider(FilterCriteria filter, Aggregation aggregation,
+            int bucketSeconds, String table) {
         logger.debug(
-                "JDBC::getHistItemFilterQueryProvider filter = {}, numberDecimalcount = {}, table = {}, simpleName = {}",
-                filter.toString(), numberDecimalcount, table, simpleName);
+                "JDBC::histItemAggregateQueryProvider filter = {}, aggregation = {}, bucketSeconds = {}, table = {}",
+                filter.toString(), aggregation, bucketSeconds, table);
+        String order = (filter.getOrdering() == Ordering.ASCENDING) ? " ASC" : " DESC";
+        String key = table + '|' + aggregation + '|' + bucketSeconds + '|' + (filter.getBeginDate() != null) + '|'
+                + (filter.getEndDate() != null) + '|' + order;
+        return histItemQueries.computeIfAbsent(key, k -> {
+            String bucket = timeBucketProvider(bucketSeconds);
+            String timeFilter = histItemTimeFilterProvider(filter);
+            String queryString;
+            if (aggregation == Aggregation.LAST) {
+                queryString = "SELECT time, value FROM " + table + " INNER JOIN (SELECT MAX(time) AS lasttime FROM "
+                        + table + timeFilter + " GROUP BY " + bucket + ") b ON time = b.lasttime ORDER BY time"
+                        + order;
+            } else {
+                queryString = "SELECT MIN(time), " + aggregation.name() + "(value) FROM " + table + timeFilter
+                        + " GROUP BY " + bucket + " ORDER BY 1" + order;
+            }
+            logger.debug("JDBC::histItemAggregateQueryProvider key = {}, queryString = {}", k, queryString);
+            return queryString;
+        });
+    }
+
+    /**
+     * SELECT FLOOR(UNIX_TIMESTAMP(time)/3600), MIN(time), SUM(cnt), SUM(sumv), MIN(minv), MAX(maxv) FROM
+     * number_item_0114_5m WHERE TIME<? AND TIME>? GROUP BY FLOOR(UNIX_TIMESTAMP(time)/3600)
+     *
+     * @param tail true to select the values from the high-water mark on, false for those before it
+     */
+    protected String rollupAggregateQueryProvider(FilterCriteria filter, int bucketSeconds, String table,
+            String columns, boolean tail) {
+        String key = "rollupquery|" + table + '|' + bucketSeconds + '|' + (filter.getBeginDate() != null) + '|'
+                + (filter.getEndDate() != null);
+        return histItemQueries.computeIfAbsent(key, k -> {
+            String bucket = timeBucketProvider(bucketSeconds);
+            String timeFilter = histItemTimeFilterProvider(filter).replace(" WHERE", " AND");
+            String queryString = "SELECT " + bucket + ", MIN(time), " + columns + " FROM " + table
+                    + (tail ? " WHERE TIME>=?" : " WHERE TIME<?") + timeFilter + " GROUP BY " + bucket;
+            logger.debug("JDBC::rollupAggregateQueryProvider key = {}, queryString = {}", k, queryString);
+            return queryString;
+        });
+    }
+
+    protected String timeBucketProvider(int bucketSeconds) {
+        return StringUtilsExt.replaceArrayMerge(sqlTimeBucket, new String[] { "#bucketSeconds#" },
+                new String[] { String.valueOf(bucketSeconds) });
+    }
 
+    protected String histItemTimeFilterProvider(FilterCriteria filter) {
         String filterString = "";
         if (filter.getBeginDate() != null) {
             filterString += filterString.isEmpty() ? " WHERE" : " AND";
-            filterString += " TIME>'" + JDBC_DATE_FORMAT.format(filter.getBeginDateZoned()) + "'";
+            filterString += " TIME>?";
         }
         if (filter.getEndDate() != null) {
             filterString += filterString.isEmpty() ? " WHERE" : " AND";
-            filterString += " TIME<'" + JDBC_DATE_FORMAT.format(filter.getEndDateZoned()) + "'";
+            filterString += " TIME<?";
         }
-        filterString += (filter.getOrdering() == Ordering.ASCENDING) ? " ORDER BY time ASC" : " ORDER BY time DESC ";
-        if (filter.getPageSize() != 0x7fffffff) {
-            filterString += " LIMIT " + filter.getPageNumber() * filter.getPageSize() + "," + filter.getPageSize();
+        return filterString;
+    }
+
+    protected List<Object> histItemTimeFilterParams(FilterCriteria filter) {
+        List<Object> params = new ArrayList<>(4);
+        if (filter.getBeginDate() != null) {
+            params.add(timeAsObject(Date.from(filter.getBeginDateZoned().toInstant())));
         }
-        // SELECT time, ROUND(value,3) FROM number_item_0114 ORDER BY time DESC LIMIT 0,1
-        // rounding HALF UP
-        String queryString = "NUMBERITEM".equalsIgnoreCase(simpleName) && numberDecimalcount > -1
-                ? "SELECT time, ROUND(value," + numberDecimalcount + ") FROM " + table
-                : "SELECT time, value FROM " + table;
-        if (!filterString.isEmpty()) {
-            queryString += filterString;
+        if (filter.getEndDate() != null) {
+            params.add(timeAsObject(Date.from(filter.getEndDateZoned().toInstant())));
         }
-        logger.debug("JDBC::query queryString = {}", queryString);
-        return queryString;
+        return params;
     }
 
-    private String updateItemTableNamesProvider(List<ItemVO> namesList) {
-        logger.debug("JDBC::updateItemTableNamesProvider namesList.size = {}", namesList.size());
-        String queryString = "";
-        for (int i = 0; i < namesList.size(); i++) {
-            ItemVO it = namesList.get(i);
-            queryString += "ALTER TABLE " + it.getTableName() + " RENAME TO " + it.getNewTableName() + ";";
+    /**
+     * SELECT 0 AS idx, time, value FROM number_item_0001 WHERE time=(SELECT MAX(time) FROM number_item_0001) UNION ALL
+     * SELECT 1 AS idx, time, value FROM number_item_0002 WHERE time=(SELECT MAX(time) FROM number_item_0002)
+     */
+    protected String lastItemValuesQueryProvider(List<String> tables) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < tables.size(); i++) {
+            if (i > 0) {
+                sb.append(" UNION ALL ");
+            }
+            String table = tables.get(i);
+            sb.append("SELECT ").append(i).append(" AS idx, time, value FROM ").append(table)
+                    .append(" WHERE time=(SELECT MAX(time) FROM ").append(table).append(")");
         }
-        logger.debug("JDBC::query queryString = {}", queryString);
-        return queryString;
+        return sb.toString();
     }
 
-    protected ItemVO storeItemValueProvider(Item item, ItemVO vo) {
-        String itemType = getItemType(item);
+    /**
+     * SELECT h.itemid, h.time, h.value FROM history_number h WHERE h.itemid IN (1,2) AND h.time=(SELECT MAX(time)
+     * FROM history_number WHERE itemid=h.itemid)
+     */
+    protected String lastNarrowItemValuesQueryProvider(String table, List<Integer> ids) {
+        StringBuilder sb = new StringBuilder();
+        for (Integer id : ids) {
+            sb.append(sb.length() > 0 ? "," : "").append(id);
+        }
+        return "SELECT h.itemid, h.time, h.value FROM " + table + " h WHERE h.itemid IN (" + sb
+                + ") AND h.time=(SELECT MAX(time) FROM " + table + " WHERE itemid=h.itemid)";
+    }
 
-        logger.debug("JDBC::storeItemValueProvider: item '{}' as Type '{}' in '{}' with state '{}'", item.getName(),
-                itemType, vo.getTableName(), item.getState().toString());
-
-        // insertItemValue
-        logger.debug("JDBC::storeItemValueProvider: getState: '{}'", item.getState().toString());
-        if ("COLORITEM".equals(itemType)) {
-            vo.setValueTypes(getSqlTypes().get(itemType), java.lang.String.class);
-            vo.setValue(item.getState().toString());
-        } else if ("NUMBERITEM".equals(itemType)) {
-            String it = getSqlTypes().get(itemType);
-            if (it.toUpperCase().contains("DOUBLE")) {
-                vo.setValueTypes(it, java.lang.Double.class);
-                Number newVal = ((DecimalType) item.getState());
-                logger.debug("JDBC::storeItemValueProvider: newVal.doubleValue: '{}'", newVal.doubleValue());
-                vo.setValue(newVal.doubleValue());
-            } else if (it.toUpperCase().contains("DECIMAL") || it.toUpperCase().contains("NUMERIC")) {
-                vo.setValueTypes(it, java.math.BigDecimal.class);
-                DecimalType newVal = ((DecimalType) item.getState());
-                logger.debug("JDBC::storeItemValueProvider: newVal.toBigDecimal: '{}'", newVal.toBigDecimal());
-                vo.setValue(newVal.toBigDecimal());
-            } else if (it.toUpperCase().contains("INT")) {
-                vo.setValueTypes(it, java.lang.Integer.class);
-                Number newVal = ((DecimalType) item.getState());
-                logger.debug("JDBC::storeItemValueProvider: newVal.intValue: '{}'", newVal.intValue());
-                vo.setValue(newVal.intValue());
-            } else {// fall back to String
-                vo.setValueTypes(it, java.lang.String.class);
-                logger.warn("JDBC::storeItemValueProvider: item.getState().toString(): '{}'",
-                        item.getState().toString());
-                vo.setValue(item.getState().toString());
+    /**
+     * Returns what history queries select time and value of an item table from. In narrow schema this is a derived
+     * table of the item's rows in the table of its item type, so all query providers apply unchanged.
+     */
+    protected String tableSourceProvider(String table, Item item) {
+        if (!narrowSchema) {
+            return table;
+        }
+        return "(SELECT time, value FROM " + storageTableProvider(table, getItemType(item)) + " WHERE itemid="
+                + getItemId(table) + ") h";
+    }
+
+    /**
+     * @return the table the values of an item table are stored in, in narrow schema the table of the item type,
+     *         e.g. history_number
+     */
+    protected String storageTableProvider(String table, String itemType) {
+        if (!narrowSchema) {
+            return table;
+        }
+        String type = itemType.toLowerCase();
+        return "history_" + (type.endsWith("item") ? type.substring(0, type.length() - 4) : type);
+    }
+
+    /**
+     * Renders the item id parts of table and insert templates, which are only used in narrow schema.
+     */
+    protected String itemKeyProvider(String sql, String table) {
+        if (!narrowSchema) {
+            return sql.replace("#itemIdColumn#", "").replace("#itemIdKey#", "").replace("#itemIdValue#", "")
+                    .replace("#itemIdMatch#", "").replace("#itemIdWhere#", "");
+        }
+        int id = getItemId(table);
+        return sql.replace("#itemIdColumn#", "itemid INTEGER NOT NULL, ").replace("#itemIdKey#", "itemid, ")
+                .replace("#itemIdValue#", id + ", ").replace("#itemIdMatch#", " AND h.itemid=temp.itemid")
+                .replace("#itemIdWhere#", "itemid=" + id + " AND ");
+    }
+
+    /**
+     * @return the rollup table of an item table, e.g. number_item_0001_5m or in narrow schema history_number_5m
+     */
+    protected String rollupTableProvider(String table, String itemType, RollupInterval r) {
+        return storageTableProvider(table, itemType) + "_" + r.getSuffix();
+    }
+
+    /**
+     * Returns what rollup queries select the buckets of an item table from, see
+     * {@link #tableSourceProvider(String, Item)}.
+     */
+    protected String rollupSourceProvider(String table, Item item, RollupInterval r) {
+        String rollup = rollupTableProvider(table, getItemType(item), r);
+        if (!narrowSchema) {
+            return rollup;
+        }
+        return "(SELECT time, cnt, sumv, minv, maxv FROM " + rollup + " WHERE itemid=" + getItemId(table) + ") h";
+    }
+
+    /**
+     * @param period start of the partition's period, e.g. 202610
+     */
+    protected String partitionNameProvider(String table, String period) {
+        return "p" + period;
+    }
+
+    /**
+     * Renders the insert statement of an item table.
+     *
+     * @param timeValue SQL for the time column, "tablePrimaryValue" or a parameter placeholder
+     */
+    protected String insertItemValueProvider(String tableName, String dbType, String timeValue) {
+        return StringUtilsExt.replaceArrayMerge(sqlInsertItemValue,
+                new String[] { "#tableName#", "#tablePrimaryValue#" },
+                new String[] { tableName, timeValue });
+    }
+
+    /**
+     * Renders a multi-row upsert of an item table, full chunks are cached.
+     */
+    protected String insertItemValueRowsProvider(ItemTableVO t, int rows) {
+        if (rows < INSERT_ROWS_SIZE) {
+            return renderInsertItemValueRows(t, rows);
+        }
+        return histItemQueries.computeIfAbsent("insert|" + t.getTableName() + '|' + rows,
+                k -> renderInsertItemValueRows(t, rows));
+    }
+
+    private String renderInsertItemValueRows(ItemTableVO t, int rows) {
+        String storage = storageTableProvider(t.getTableName(), t.getItemType());
+        String row = itemKeyProvider(StringUtilsExt.replaceArrayMerge(sqlInsertItemValueRow,
+                new String[] { "#timeValue#", "#dbType#" }, new String[] { timeParameterProvider(), t.getDbType() }),
+                t.getTableName());
+        StringBuilder sb = new StringBuilder(rows * (row.length() + 2));
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sb.append(", ");
             }
-        } else if ("ROLLERSHUTTERITEM".equals(itemType) || "DIMMERITEM".equals(itemType)) {
-            vo.setValueTypes(getSqlTypes().get(itemType), java.lang.Integer.class);
-            Number newVal = ((DecimalType) item.getState());
-            logger.debug("JDBC::storeItemValueProvider: newVal.intValue: '{}'", newVal.intValue());
-            vo.setValue(newVal.intValue());
-        } else if ("DATETIMEITEM".equals(itemType)) {
-            vo.setValueTypes(getSqlTypes().get(itemType), java.sql.Timestamp.class);
-            Calendar x = ((DateTimeType) item.getState()).getCalendar();
-            java.sql.Timestamp d = new java.sql.Timestamp(x.getTimeInMillis());
-            logger.debug("JDBC::storeItemValueProvider: DateTimeItem: '{}'", d);
-            vo.setValue(d);
-        } else {
-            /*
-             * !!ATTENTION!!
-             *
-             * 1. DimmerItem.getStateAs(PercentType.class).toString() always
-             * returns 0
-             * RollershutterItem.getStateAs(PercentType.class).toString() works
-             * as expected
-             *
-             * 2. (item instanceof ColorItem) == (item instanceof DimmerItem) =
-             * true Therefore for instance tests ColorItem always has to be
-             * tested before DimmerItem
-             *
-             * !!ATTENTION!!
-             */
-            // All other items should return the best format by default
-            vo.setValueTypes(getSqlTypes().get(itemType), java.lang.String.class);
-            logger.debug("JDBC::storeItemValueProvider: other: item.getState().toString(): '{}'",
-                    item.getState().toString());
-            vo.setValue(item.getState().toString());
+            sb.append(row);
+        }
+        return itemKeyProvider(StringUtilsExt.replaceArrayMerge(sqlInsertItemValueRows,
+                new String[] { "#tableName#", "#tableName#", "#tableName#", "#valueRows#" },
+                new String[] { storage, storage, storage, sb.toString() }), t.getTableName());
+    }
+
+    /**
+     * @return SQL for a bound time column value
+     */
+    protected String timeParameterProvider() {
+        return "?";
+    }
+
+    protected ItemTableVO itemTableProvider(Item item, String tableName) {
+        String itemType = getItemType(item);
+        String dbType = getSqlTypes().get(itemType);
+        JdbcValueCodec codec = JdbcValueCodec.of(itemType, dbType);
+        if (codec == JdbcValueCodec.NUMBER_STRING) {
+            logger.warn("JDBC::itemTableProvider: values of '{}' are stored as text in a column of type '{}'",
+                    tableName, dbType);
+        }
+        /*
+         * !!ATTENTION!!
+         *
+         * 1. DimmerItem.getStateAs(PercentType.class).toString() always
+         * returns 0
+         * RollershutterItem.getStateAs(PercentType.class).toString() works
+         * as expected
+         *
+         * 2. (item instanceof ColorItem) == (item instanceof DimmerItem) =
+         * true Therefore for instance tests ColorItem always has to be
+         * tested before DimmerItem
+         *
+         * !!ATTENTION!!
+         */
+        // All other items, COLORITEM included, should return the best format by default as String
+        String storage = storageTableProvider(tableName, itemType);
+        ItemTableVO t = new ItemTableVO(tableName, itemType, dbType, codec,
+                itemKeyProvider(insertItemValueProvider(storage, dbType, sqlTypes.get("tablePrimaryValue")), tableName),
+                itemKeyProvider(insertItemValueProvider(storage, dbType, timeParameterProvider()), tableName));
+        logger.debug("JDBC::itemTableProvider: {}", t);
+        return t;
+    }
+
+    protected ItemVO storeItemValueProvider(ItemTableVO t, Item item, ItemVO vo) {
+        return storeItemValueProvider(t, item, item.getState(), vo);
+    }
+
+    protected ItemVO storeItemValueProvider(ItemTableVO t, Item item, State state, ItemVO vo) {
+        vo.setValueTypes(t.getDbType(), t.getJavaType());
+        vo.setItemType(t.getItemType());
+        vo.setValue(t.getCodec().toValue(state));
+        if (logger.isDebugEnabled()) {
+            logger.debug("JDBC::storeItemValueProvider: item '{}' as Type '{}' in '{}' with value '{}'",
+                    item.getName(), t.getItemType(), t.getTableName(), vo.getValue());
         }
         return vo;
     }
 
+    protected Object[][] storeItemValuesParams(ItemTableVO t, List<ItemVO> vol) {
+        Object[][] params = new Object[vol.size()][];
+        for (int i = 0; i < vol.size(); i++) {
+            ItemVO vo = vol.get(i);
+            params[i] = t.getValueParamCount() == 1 ? new Object[] { timeAsObject(vo.getTime()), vo.getValue() }
+                    : new Object[] { timeAsObject(vo.getTime()), vo.getValue(), vo.getValue() };
+        }
+        return params;
+    }
+
     /*****************
      * H E L P E R S *
      *****************/
+    /**
+     * Runs a history query on the read pool, if there is one.
+     */
+    protected List<Object[]> queryReadObjectArrays(String sql, Object[] params) {
+        String pool = readPool;
+        return pool != null ? Yank.queryObjectArrays(pool, sql, params) : Yank.queryObjectArrays(sql, params);
+    }
+
+    protected Connection getReadConnection() throws SQLException {
+        String pool = readPool;
+        return (pool != null ? Yank.getConnectionPool(pool) : Yank.getDefaultConnectionPool()).getConnection();
+    }
+
     protected State getState(Item item, Object v) {
-        String clazz = v.getClass().getSimpleName();
-        logger.debug("JDBC::ItemResultHandler::handleResult getState value = '{}', getClass = '{}', clazz = '{}'",
-                v.toString(), v.getClass(), clazz);
-        if (item instanceof NumberItem) {
-            String it = getSqlTypes().get("NUMBERITEM");
-            if (it.toUpperCase().contains("DOUBLE")) {
-                return new DecimalType(((Number) v).doubleValue());
-            } else if (it.toUpperCase().contains("DECIMAL") || it.toUpperCase().contains("NUMERIC")) {
-                return new DecimalType((BigDecimal) v);
-            } else if (it.toUpperCase().contains("INT")) {
-                return new DecimalType(((Integer) v).intValue());
-            }
-            return DecimalType.valueOf(((String) v).toString());
-        } else if (item instanceof ColorItem) {
-            return HSBType.valueOf(((String) v).toString());
-        } else if (item instanceof DimmerItem) {
-            return new PercentType(objectAsInteger(v));
-        } else if (item instanceof SwitchItem) {
-            return OnOffType.valueOf(((String) v).toString().trim());
-        } else if (item instanceof ContactItem) {
-            return OpenClosedType.valueOf(((String) v).toString().trim());
-        } else if (item instanceof RollershutterItem) {
-            return new PercentType(objectAsInteger(v));
-        } else if (item instanceof DateTimeItem) {
-            Calendar calendar = Calendar.getInstance();
-            calendar.setTimeInMillis(objectAsLong(v));
-            return new DateTimeType(calendar);
-        } else if (item instanceof StringItem) {
-            return StringType.valueOf(((String) v).toString());
-        } else {// Call, Location, String
-            return StringType.valueOf(((String) v).toString());
+        return getReadCodec(item).toState(v);
+    }
+
+    /**
+     * Returns the codec to read values of an item, chosen once per item class. Groups have to be resolved to their
+     * base item by the caller, otherwise their values are read as strings.
+     */
+    public JdbcValueCodec getReadCodec(Item item) {
+        JdbcValueCodec codec = readCodecs.get(item.getClass());
+        if (codec == null) {
+            String itemType = item.getClass().getSimpleName().toUpperCase();
+            codec = JdbcValueCodec.of(itemType, getSqlTypes().get(itemType));
+            readCodecs.put(item.getClass(), codec);
         }
+        return codec;
+    }
+
+    /**
+     * Converts an aggregated value, whose SQL type depends on the database and the aggregate function.
+     */
+    protected State getAggregateState(Item item, Object v) {
+        Number n = v instanceof Number ? (Number) v : new BigDecimal(v.toString().trim());
+        if (item instanceof DimmerItem || item instanceof RollershutterItem) {
+            return new PercentType((int) Math.round(n.doubleValue()));
+        }
+        return new DecimalType(n instanceof BigDecimal ? (BigDecimal) n : BigDecimal.valueOf(n.doubleValue()));
+    }
+
+    /**
+     * Converts a stored value the way a history query would return it, groups by the type of their base item.
+     */
+    public HistoricItem toHistoricItem(Item item, Object value, Date time, int numberDecimalcount) {
+        Item typeItem = typeItem(item);
+        State state = getState(typeItem, value);
+        if (typeItem instanceof NumberItem && numberDecimalcount > -1 && state instanceof DecimalType) {
+            state = new DecimalType(((DecimalType) state).toBigDecimal().setScale(numberDecimalcount,
+                    RoundingMode.HALF_UP));
+        }
+        return new JdbcItem(item.getName(), state, time);
+    }
+
+    /**
+     * Converts a state the way it would be stored and read back, e.g. of a value not written yet.
+     */
+    public HistoricItem toHistoricItem(Item item, State state, Date time, int numberDecimalcount) {
+        return toHistoricItem(item, getReadCodec(typeItem(item)).toValue(state), time, numberDecimalcount);
+    }
+
+    private Item typeItem(Item item) {
+        return item instanceof GroupItem && ((GroupItem) item).getBaseItem() != null
+                ? ((GroupItem) item).getBaseItem()
+                : item;
     }
 
     protected Date objectAsDate(Object v) {
@@ -500,20 +1357,53 @@ public class JdbcBaseDAO {
         return new Date(((Timestamp) v).getTime());
     }
 
-    protected Long objectAsLong(Object v) {
-        if (v instanceof Long) {
-            return ((Number) v).longValue();
-        } else if (v instanceof java.sql.Date) {
-            return ((java.sql.Date) v).getTime();
+    private String pageCursorKey(FilterCriteria filter, String table, int pageNumber) {
+        return table + '|' + filter.getBeginDate() + '|' + filter.getEndDate() + '|' + filter.getOrdering() + '|'
+                + filter.getPageSize() + '|' + pageNumber;
+    }
+
+    protected Object timeAsObject(Date time) {
+        return new Timestamp(time.getTime());
+    }
+
+    /**
+     * Returns the cached statements of an item table, rendering them when the table is used for the first time.
+     */
+    public ItemTableVO getItemTable(Item item, String tableName) {
+        ItemTableVO t = itemTables.get(tableName);
+        if (t == null) {
+            t = itemTableProvider(item, tableName);
+            itemTables.put(tableName, t);
         }
-        return ((java.sql.Timestamp) v).getTime();
+        return t;
     }
 
-    protected Integer objectAsInteger(Object v) {
-        if (v instanceof Byte) {
-            return ((Byte) v).intValue();
+    /**
+     * Returns the cached statements of the table of a prepared value.
+     */
+    protected ItemTableVO getPreparedItemTable(ItemVO vo) {
+        ItemTableVO t = itemTables.get(vo.getTableName());
+        if (t == null) {
+            // cached statements were dropped after the values had been prepared
+            String storage = storageTableProvider(vo.getTableName(), vo.getItemType());
+            t = new ItemTableVO(vo.getTableName(), vo.getItemType(), vo.getDbType(),
+                    JdbcValueCodec.of(vo.getItemType(), vo.getDbType()),
+                    itemKeyProvider(insertItemValueProvider(storage, vo.getDbType(), sqlTypes.get("tablePrimaryValue")),
+                            vo.getTableName()),
+                    itemKeyProvider(insertItemValueProvider(storage, vo.getDbType(), timeParameterProvider()),
+                            vo.getTableName()));
         }
-        return ((Integer) v).intValue();
+        return t;
+    }
+
+    /**
+     * Drops all cached item table statements and history queries, e.g. after tables were renamed or sql types changed.
+     */
+    public void clearItemTables() {
+        itemTables.clear();
+        readCodecs.clear();
+        histItemQueries.clear();
+        rollupTables.clear();
     }
 
     public String getItemType(Item i) {
@@ -550,6 +1440,15 @@ public class JdbcBaseDAO {
         return itemType;
     }
 
+    /**
+     * @return start of the time bucket of seconds containing time, aligned like the buckets of sqlTimeBucket
+     */
+    public Date timeBucketStart(Date time, int seconds) {
+        long size = seconds * 1000L;
+        long offset = sqlTimeBucketLocal ? TimeZone.getDefault().getOffset(time.getTime()) : 0;
+        return new Date(Math.floorDiv(time.getTime() + offset, size) * size - offset);
+    }
+
     /******************************
      * public Getters and Setters *
      ******************************/
@@ -561,4 +1460,75 @@ public class JdbcBaseDAO {
         return sqlTypes.get(getItemType(item));
     }
 
+    /**
+     * @return true if the table holds no values of a single item but is a narrow schema storage table, a rollup
+     *         table or a partition of an item table, e.g. history_number, number_item_0001_5m or
+     *         number_item_0001_p202610
+     */
+    public boolean isDerivedTable(String tableName) {
+        String name = tableName.toLowerCase();
+        return STORAGE_TABLE.matcher(name).find() || ROLLUP_TABLE.matcher(name).find()
+                || PARTITION_TABLE.matcher(name).find();
+    }
+
+    /**
+     * @return true if new item tables are created with range partitions
+     */
+    public boolean isPartitioningEnabled() {
+        return partitionInterval != null && sqlCreatePartitionedItemTable != null && !narrowSchema
+                && isPartitioningSupported();
+    }
+
+    /**
+     * MySQL and MariaDB only accept UNIX_TIMESTAMP of a TIMESTAMP as partition expression if the result is an
+     * integer, which it is not for a time column with fractional seconds, e.g. the TIMESTAMP(3) of newer versions.
+     *
+     * @return false if item tables cannot be partitioned by time on this database
+     */
+    protected boolean isPartitioningSupported() {
+        return !FRACTIONAL_SECONDS.matcher(sqlTypes.get("tablePrimaryKey")).find();
+    }
+
+    public PartitionInterval getPartitionInterval() {
+        return partitionInterval;
+    }
+
+    public void setPartitionInterval(PartitionInterval partitionInterval) {
+        this.partitionInterval = partitionInterval;
+    }
+
+    public String getReadPool() {
+        return readPool;
+    }
+
+    /**
+     * @param readPool name of the Yank connection pool of history queries, null to use the default pool
+     */
+    public void setReadPool(String readPool) {
+        this.readPool = readPool;
+    }
+
+    public boolean isNarrowSchema() {
+        return narrowSchema;
+    }
+
+    public void setNarrowSchema(boolean narrowSchema) {
+        this.narrowSchema = narrowSchema;
+    }
+
+    /**
+     * Registers the id of an item in the items table, which keys its rows in narrow schema.
+     */
+    public void putItemId(String table, int itemId) {
+        itemIds.put(table, itemId);
+    }
+
+    protected int getItemId(String table) {
+        Integer id = itemIds.get(table);
+        if (id == null) {
+            throw new IllegalStateException("JDBC: no item id registered for table '" + table + "'");
+        }
+        return id;
+    }
+
 }
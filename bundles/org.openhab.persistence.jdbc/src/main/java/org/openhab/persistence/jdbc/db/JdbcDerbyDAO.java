@@ -12,18 +12,17 @@
  */
 package org.openhab.persistence.jdbc.db;
 
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.commons.lang.StringUtils;
 import org.knowm.yank.Yank;
 import org.openhab.core.items.Item;
 import org.openhab.core.persistence.FilterCriteria;
-import org.openhab.core.persistence.FilterCriteria.Ordering;
-import org.openhab.core.persistence.HistoricItem;
+import org.openhab.persistence.jdbc.model.Aggregation;
 import org.openhab.persistence.jdbc.model.ItemVO;
 import org.openhab.persistence.jdbc.model.ItemsVO;
-import org.openhab.persistence.jdbc.model.JdbcItem;
+import org.openhab.persistence.jdbc.model.RollupInterval;
 import org.openhab.persistence.jdbc.utils.StringUtilsExt;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,10 +53,21 @@ public class JdbcDerbyDAO extends JdbcBaseDAO {
         sqlGetDB = "VALUES SYSCS_UTIL.SYSCS_GET_DATABASE_PROPERTY( 'DataDictionaryVersion' )"; // returns version
         sqlIfTableExists = "SELECT * FROM SYS.SYSTABLES WHERE TABLENAME='#searchTable#'";
         sqlCreateItemsTableIfNot = "CREATE TABLE #itemsManageTable# ( ItemId INTEGER NOT NULL GENERATED ALWAYS AS IDENTITY (START WITH 1, INCREMENT BY 1), #colname# #coltype# NOT NULL)";
-        sqlCreateItemTable = "CREATE TABLE #tableName# (time #tablePrimaryKey# NOT NULL, value #dbType#, PRIMARY KEY(time))";
+        sqlCreateItemTable = "CREATE TABLE #tableName# (#itemIdColumn#time #tablePrimaryKey# NOT NULL, value #dbType#, PRIMARY KEY(#itemIdKey#time))";
+        sqlRenameItemTable = "RENAME TABLE #tableName# TO #newTableName#";
         // Prevent error against duplicate time value (seldom): No powerful Merge found:
         // http://www.codeproject.com/Questions/162627/how-to-insert-new-record-in-my-table-if-not-exists
-        sqlInsertItemValue = "INSERT INTO #tableName# (TIME, VALUE) VALUES( #tablePrimaryValue#, CAST( ? as #dbType#) )";
+        sqlInsertItemValue = "INSERT INTO #tableName# (#itemIdKey#TIME, VALUE) VALUES( #itemIdValue##tablePrimaryValue#, CAST( ? as #dbType#) )";
+        // MERGE of Derby does not accept a VALUES list as source, values are written as JDBC batch
+        sqlInsertItemValueRows = null;
+        sqlTimeBucket = "{fn TIMESTAMPDIFF(SQL_TSI_SECOND, TIMESTAMP('1970-01-01 00:00:00'), time)} / #bucketSeconds#";
+        sqlTimeBucketLocal = true;
+        // no range partitioning, retention deletes old values
+        sqlCreatePartitionedItemTable = null;
+        sqlGetPartitions = null;
+        sqlCreateRollupTable = "CREATE TABLE #tableName# (#itemIdColumn#time #tablePrimaryKey# NOT NULL, cnt INTEGER, sumv #rollupType#, minv #rollupType#, maxv #rollupType#, PRIMARY KEY(#itemIdKey#time))";
+        // SUM of Derby keeps the type of its argument, SMALLINT would overflow
+        sqlRollupValueColumns = "COUNT(value), SUM(CAST(value AS DOUBLE)), MIN(value), MAX(value)";
     }
 
     private void initSqlTypes() {
@@ -136,101 +146,75 @@ public class JdbcDerbyDAO extends JdbcBaseDAO {
      *************/
     @Override
     public void doCreateItemTable(ItemVO vo) {
-        String sql = StringUtilsExt.replaceArrayMerge(sqlCreateItemTable,
-                new String[] { "#tableName#", "#dbType#", "#tablePrimaryKey#" },
-                new String[] { vo.getTableName(), vo.getDbType(), sqlTypes.get("tablePrimaryKey") });
-        Yank.execute(sql, null);
-    }
-
-    @Override
-    public void doStoreItemValue(Item item, ItemVO vo) {
-        vo = storeItemValueProvider(item, vo);
-        String sql = StringUtilsExt.replaceArrayMerge(sqlInsertItemValue,
-                new String[] { "#tableName#", "#dbType#", "#tablePrimaryValue#" },
-                new String[] { vo.getTableName().toUpperCase(), vo.getDbType(), sqlTypes.get("tablePrimaryValue") });
-        Object[] params = new Object[] { vo.getValue() };
-        logger.debug("JDBC::doStoreItemValue sql={} value='{}'", sql, vo.getValue());
-        Yank.execute(sql, params);
+        if (narrowSchema) {
+            // Derby has no CREATE TABLE IF NOT EXISTS, the table of an item type is shared by its items
+            ItemsVO isvo = new ItemsVO();
+            isvo.setItemsManageTable(storageTableProvider(vo.getTableName(), vo.getItemType()));
+            if (doIfTableExists(isvo)) {
+                return;
+            }
+        }
+        super.doCreateItemTable(vo);
     }
 
     @Override
-    public List<HistoricItem> doGetHistItemFilterQuery(Item item, FilterCriteria filter, int numberDecimalcount,
-            String table, String name) {
-        String sql = histItemFilterQueryProvider(filter, numberDecimalcount, table, name);
-        List<Object[]> m = Yank.queryObjectArrays(sql, null);
-
-        logger.debug("JDBC::doGetHistItemFilterQuery got Array length={}", m.size());
-
-        List<HistoricItem> items = new ArrayList<>();
-        for (int i = 0; i < m.size(); i++) {
-            logger.debug("JDBC::doGetHistItemFilterQuery 0='{}' 1='{}'", m.get(i)[0], m.get(i)[1]);
-            items.add(new JdbcItem(item.getName(), getState(item, m.get(i)[1]), objectAsDate(m.get(i)[0])));
+    public void doCreateRollupTable(Item item, String table, RollupInterval r) {
+        ItemsVO isvo = new ItemsVO();
+        isvo.setItemsManageTable(rollupTableProvider(table, getItemType(item), r));
+        if (!doIfTableExists(isvo)) {
+            super.doCreateRollupTable(item, table, r);
         }
-        return items;
     }
 
     /****************************
      * SQL generation Providers *
      ****************************/
-    static final DateTimeFormatter JDBC_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    @Override
+    protected String insertItemValueProvider(String tableName, String dbType, String timeValue) {
+        return StringUtilsExt.replaceArrayMerge(sqlInsertItemValue,
+                new String[] { "#tableName#", "#dbType#", "#tablePrimaryValue#" },
+                new String[] { tableName.toUpperCase(), dbType, timeValue });
+    }
 
-    /**
-     * @param filter
-     * @param numberDecimalcount
-     * @param table
-     * @return
-     */
-    private String histItemFilterQueryProvider(FilterCriteria filter, int numberDecimalcount, String table,
-            String simpleName) {
-        logger.debug(
-                "JDBC::getHistItemFilterQueryProvider filter = {}, numberDecimalcount = {}, table = {}, simpleName = {}",
-                StringUtilsExt.filterToString(filter), numberDecimalcount, table, simpleName);
-
-        String filterString = "";
-        if (filter.getBeginDate() != null) {
-            filterString += filterString.isEmpty() ? " WHERE" : " AND";
-            filterString += " TIME>'" + JDBC_DATE_FORMAT.format(filter.getBeginDateZoned()) + "'";
-        }
-        if (filter.getEndDate() != null) {
-            filterString += filterString.isEmpty() ? " WHERE" : " AND";
-            filterString += " TIME<'" + JDBC_DATE_FORMAT.format(filter.getEndDateZoned()) + "'";
-        }
-        filterString += (filter.getOrdering() == Ordering.ASCENDING) ? " ORDER BY time ASC" : " ORDER BY time DESC";
-        if (filter.getPageSize() != 0x7fffffff) {
-            // TODO: TESTING!!!
-            // filterString += " LIMIT " + filter.getPageNumber() *
-            // filter.getPageSize() + "," + filter.getPageSize();
-            // SELECT time, value FROM ohscriptfiles_sw_ace_paths_0001 ORDER BY
-            // time DESC OFFSET 1 ROWS FETCH NEXT 0 ROWS ONLY
-            // filterString += " OFFSET " + filter.getPageSize() +" ROWS FETCH
-            // FIRST||NEXT " + filter.getPageNumber() * filter.getPageSize() + "
-            // ROWS ONLY";
-            filterString += " OFFSET " + filter.getPageSize() + " ROWS FETCH FIRST "
-                    + (filter.getPageNumber() * filter.getPageSize() + 1) + " ROWS ONLY";
+    @Override
+    protected String lastItemValuesQueryProvider(List<String> tables) {
+        List<String> upper = new ArrayList<>(tables.size());
+        for (String table : tables) {
+            upper.add(table.toUpperCase());
         }
+        return super.lastItemValuesQueryProvider(upper);
+    }
 
-        // http://www.seemoredata.com/en/showthread.php?132-Round-function-in-Apache-Derby
-        // simulated round function in Derby: CAST(value 0.0005 AS DECIMAL(15,3))
-        // simulated round function in Derby: "CAST(value 0.0005 AS DECIMAL(15,"+numberDecimalcount+"))"
+    @Override
+    protected String histItemAggregateQueryProvider(FilterCriteria filter, Aggregation aggregation,
+            int bucketSeconds, String table) {
+        return super.histItemAggregateQueryProvider(filter, aggregation, bucketSeconds, table.toUpperCase());
+    }
+
+    @Override
+    protected String rollupTableProvider(String table, String itemType, RollupInterval r) {
+        return super.rollupTableProvider(table, itemType, r).toUpperCase();
+    }
 
-        String queryString = "SELECT time,";
+    @Override
+    protected String histItemSelectProvider(int numberDecimalcount, String table, String simpleName) {
+        // http://www.seemoredata.com/en/showthread.php?132-Round-function-in-Apache-Derby
+        // simulated round function in Derby: CAST(value + 0.0005 AS DECIMAL(15,3))
         if ("NUMBERITEM".equalsIgnoreCase(simpleName) && numberDecimalcount > -1) {
-            // rounding HALF UP
-            queryString += "CAST(value 0.";
-            for (int i = 0; i < numberDecimalcount; i++) {
-                queryString += "0";
-            }
-            queryString += "5 AS DECIMAL(31," + numberDecimalcount + "))"; // 31 is DECIMAL max precision
-                                                                           // https://db.apache.org/derby/docs/10.0/manuals/develop/develop151.html
-        } else {
-            queryString += " value FROM " + table.toUpperCase();
+            // rounding HALF UP, 31 is DECIMAL max precision
+            // https://db.apache.org/derby/docs/10.0/manuals/develop/develop151.html
+            String half = "0." + StringUtils.repeat("0", numberDecimalcount) + "5";
+            return "SELECT time, CAST(value + " + half + " AS DECIMAL(31," + numberDecimalcount + ")) FROM "
+                    + table.toUpperCase();
         }
+        return "SELECT time, value FROM " + table.toUpperCase();
+    }
 
-        if (!filterString.isEmpty()) {
-            queryString += filterString;
-        }
-        logger.debug("JDBC::query queryString = {}", queryString);
-        return queryString;
+    @Override
+    protected String limitClauseProvider() {
+        // SELECT time, value FROM ohscriptfiles_sw_ace_paths_0001 ORDER BY time DESC OFFSET 20 ROWS FETCH NEXT 10 ROWS
+        // ONLY
+        return " OFFSET ? ROWS FETCH NEXT ? ROWS ONLY";
     }
 
     /*****************
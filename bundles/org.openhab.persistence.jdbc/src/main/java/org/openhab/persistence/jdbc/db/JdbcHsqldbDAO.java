@@ -13,8 +13,6 @@
 package org.openhab.persistence.jdbc.db;
 
 import org.knowm.yank.Yank;
-import org.openhab.core.items.Item;
-import org.openhab.persistence.jdbc.model.ItemVO;
 import org.openhab.persistence.jdbc.model.ItemsVO;
 import org.openhab.persistence.jdbc.utils.StringUtilsExt;
 import org.slf4j.Logger;
@@ -51,9 +49,19 @@ public class JdbcHsqldbDAO extends JdbcBaseDAO {
         // Prevent error against duplicate time value
         // http://hsqldb.org/doc/guide/dataaccess-chapt.html#dac_merge_statement
         // SQL_INSERT_ITEM_VALUE = "INSERT INTO #tableName# (TIME, VALUE) VALUES( NOW(), CAST( ? as #dbType#) )";
-        sqlInsertItemValue = "MERGE INTO #tableName# "
-                + "USING (VALUES #tablePrimaryValue#, CAST( ? as #dbType#)) temp (TIME, VALUE) ON (#tableName#.TIME=temp.TIME) "
-                + "WHEN NOT MATCHED THEN INSERT (TIME, VALUE) VALUES (temp.TIME, temp.VALUE)";
+        sqlInsertItemValue = "MERGE INTO #tableName# h "
+                + "USING (VALUES #itemIdValue##tablePrimaryValue#, CAST( ? as #dbType#)) temp (#itemIdKey#TIME, VALUE) ON (h.TIME=temp.TIME#itemIdMatch#) "
+                + "WHEN NOT MATCHED THEN INSERT (#itemIdKey#TIME, VALUE) VALUES (#itemIdValue#temp.TIME, temp.VALUE)";
+        sqlInsertItemValueRows = "MERGE INTO #tableName# h "
+                + "USING (VALUES #valueRows#) temp (#itemIdKey#TIME, VALUE) ON (h.TIME=temp.TIME#itemIdMatch#) "
+                + "WHEN MATCHED THEN UPDATE SET h.VALUE=temp.VALUE "
+                + "WHEN NOT MATCHED THEN INSERT (#itemIdKey#TIME, VALUE) VALUES (#itemIdValue#temp.TIME, temp.VALUE)";
+        sqlInsertItemValueRow = "( #itemIdValue##timeValue#, CAST( ? as #dbType#) )";
+        sqlTimeBucket = "DATEDIFF('second', TIMESTAMP '1970-01-01 00:00:00', time) / #bucketSeconds#";
+        sqlTimeBucketLocal = true;
+        // no range partitioning, retention deletes old values
+        sqlCreatePartitionedItemTable = null;
+        sqlGetPartitions = null;
     }
 
     /**
@@ -100,20 +108,21 @@ public class JdbcHsqldbDAO extends JdbcBaseDAO {
     /*************
      * ITEM DAOs *
      *************/
-    @Override
-    public void doStoreItemValue(Item item, ItemVO vo) {
-        vo = storeItemValueProvider(item, vo);
-        String sql = StringUtilsExt.replaceArrayMerge(sqlInsertItemValue,
-                new String[] { "#tableName#", "#dbType#", "#tableName#", "#tablePrimaryValue#" }, new String[] {
-                        vo.getTableName(), vo.getDbType(), vo.getTableName(), sqlTypes.get("tablePrimaryValue") });
-        Object[] params = new Object[] { vo.getValue() };
-        logger.debug("JDBC::doStoreItemValue sql={} value='{}'", sql, vo.getValue());
-        Yank.execute(sql, params);
-    }
 
     /****************************
      * SQL generation Providers *
      ****************************/
+    @Override
+    protected String insertItemValueProvider(String tableName, String dbType, String timeValue) {
+        return StringUtilsExt.replaceArrayMerge(sqlInsertItemValue,
+                new String[] { "#tableName#", "#dbType#", "#tablePrimaryValue#" },
+                new String[] { tableName, dbType, timeValue });
+    }
+
+    @Override
+    protected String timeParameterProvider() {
+        return "CAST( ? as " + sqlTypes.get("tablePrimaryKey") + ")";
+    }
 
     /*****************
      * H E L P E R S *
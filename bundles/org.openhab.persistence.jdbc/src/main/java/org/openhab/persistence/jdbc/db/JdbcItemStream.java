@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.db;
+
+import java.lang.ref.Cleaner;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.openhab.core.items.Item;
+import org.openhab.core.persistence.HistoricItem;
+import org.openhab.persistence.jdbc.model.JdbcItem;
+import org.openhab.persistence.jdbc.model.JdbcValueCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lazily converts the rows of a forward-only {@link ResultSet} into {@link HistoricItem}s, so only one fetch of rows
+ * is held in memory regardless of the queried range.
+ *
+ * The stream can be iterated once. It owns a pooled connection which is released when the last row has been read,
+ * on a database error, or by {@link #close()}. Callers which stop iterating early have to close it: until then the
+ * connection is missing from the pool, with a pool of one connection like that of Derby all stores wait for it. A
+ * stream which is garbage collected without being closed releases its connection and logs a warning, but that may
+ * happen much later.
+ *
+ * A database error while iterating is thrown as {@link IllegalStateException}, as the values read so far are not the
+ * complete result.
+ *
+ * @author agent - Initial contribution
+ */
+public class JdbcItemStream implements Iterable<HistoricItem>, AutoCloseable {
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final Logger logger = LoggerFactory.getLogger(JdbcItemStream.class);
+
+    private final JdbcBaseDAO dao;
+    private final Item item;
+    private final JdbcValueCodec codec;
+    private final ResultSet rs;
+    private final Resources resources;
+    private final Cleaner.Cleanable cleanable;
+    private boolean iterated = false;
+    private boolean closed = false;
+    private long rowCnt = 0;
+
+    JdbcItemStream(JdbcBaseDAO dao, Item item, JdbcValueCodec codec, Connection con, Statement st, ResultSet rs) {
+        this.dao = dao;
+        this.item = item;
+        this.codec = codec;
+        this.rs = rs;
+        this.resources = new Resources(item.getName(), con, st, rs);
+        this.cleanable = CLEANER.register(this, resources);
+    }
+
+    @Override
+    public synchronized Iterator<HistoricItem> iterator() {
+        if (iterated) {
+            throw new IllegalStateException("JdbcItemStream can only be iterated once");
+        }
+        iterated = true;
+        return new Iterator<HistoricItem>() {
+            private HistoricItem next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null && !closed) {
+                    next = readNext();
+                }
+                return next != null;
+            }
+
+            @Override
+            public HistoricItem next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                HistoricItem r = next;
+                next = null;
+                return r;
+            }
+        };
+    }
+
+    private HistoricItem readNext() {
+        try {
+            if (rs.next()) {
+                rowCnt++;
+                Object time = rs.getObject(1);
+                return new JdbcItem(item.getName(), codec.read(rs, 2), dao.objectAsDate(time));
+            }
+        } catch (SQLException e) {
+            logger.error("JDBC::JdbcItemStream: reading row {} of item '{}' failed: {}", rowCnt + 1, item.getName(),
+                    e.getMessage());
+            close();
+            throw new IllegalStateException("reading row " + (rowCnt + 1) + " of item '" + item.getName()
+                    + "' failed, the result is incomplete", e);
+        }
+        close();
+        return null;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        logger.debug("JDBC::JdbcItemStream: closing after {} rows of item '{}'", rowCnt, item.getName());
+        resources.explicit = true;
+        cleanable.clean();
+    }
+
+    /**
+     * The resources of a stream, released by {@link #close()} or when the stream has been garbage collected.
+     */
+    private static class Resources implements Runnable {
+        private final Logger logger = LoggerFactory.getLogger(JdbcItemStream.class);
+
+        private final String itemName;
+        private final Connection con;
+        private final Statement st;
+        private final ResultSet rs;
+        private volatile boolean explicit = false;
+
+        private Resources(String itemName, Connection con, Statement st, ResultSet rs) {
+            this.itemName = itemName;
+            this.con = con;
+            this.st = st;
+            this.rs = rs;
+        }
+
+        @Override
+        public void run() {
+            if (!explicit) {
+                logger.warn("JDBC::JdbcItemStream: stream of item '{}' was not closed, releasing its connection",
+                        itemName);
+            }
+            try {
+                rs.close();
+                st.close();
+                // ends the read transaction some drivers need for cursor based fetching
+                con.rollback();
+                con.setAutoCommit(true);
+            } catch (SQLException e) {
+                logger.debug("JDBC::JdbcItemStream: closing the result set failed: {}", e.getMessage());
+            } finally {
+                try {
+                    con.close();
+                } catch (SQLException e) {
+                    logger.warn("JDBC::JdbcItemStream: releasing the connection failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -61,6 +61,7 @@ public class JdbcMysqlDAO extends JdbcBaseDAO {
         databaseProps.setProperty("dataSource.cachePrepStmts", "true");
         databaseProps.setProperty("dataSource.prepStmtCacheSize", "250");
         databaseProps.setProperty("dataSource.prepStmtCacheSqlLimit", "2048");
+        databaseProps.setProperty("dataSource.useServerPrepStmts", "true");
         databaseProps.setProperty("dataSource.jdbcCompliantTruncation", "false");// jdbc standard max varchar max length
                                                                                  // of 21845
 
@@ -100,6 +101,11 @@ public class JdbcMysqlDAO extends JdbcBaseDAO {
     /****************************
      * SQL generation Providers *
      ****************************/
+    @Override
+    protected int streamFetchSizeProvider(int fetchSize) {
+        // Connector/J only streams row by row, any other fetch size reads the whole result into memory
+        return Integer.MIN_VALUE;
+    }
 
     /*****************
      * H E L P E R S *
@@ -12,19 +12,19 @@
  */
 package org.openhab.persistence.jdbc.db;
 
-import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.List;
 
 import org.knowm.yank.Yank;
-import org.openhab.core.items.Item;
-import org.openhab.core.persistence.FilterCriteria;
-import org.openhab.core.persistence.FilterCriteria.Ordering;
-import org.openhab.core.persistence.HistoricItem;
 import org.openhab.persistence.jdbc.model.ItemVO;
 import org.openhab.persistence.jdbc.model.ItemsVO;
-import org.openhab.persistence.jdbc.model.JdbcItem;
 import org.openhab.persistence.jdbc.utils.StringUtilsExt;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,6 +38,10 @@ import org.slf4j.LoggerFactory;
 public class JdbcPostgresqlDAO extends JdbcBaseDAO {
     private final Logger logger = LoggerFactory.getLogger(JdbcPostgresqlDAO.class);
 
+    // below, a batch is as fast as setting up a COPY
+    private static final int COPY_MIN_ROWS = 50;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
     /********
      * INIT *
      ********/
@@ -60,7 +64,19 @@ public class JdbcPostgresqlDAO extends JdbcBaseDAO {
         // for later use, PostgreSql > 9.5 to prevent PRIMARY key violation use:
         // SQL_INSERT_ITEM_VALUE = "INSERT INTO #tableName# (TIME, VALUE) VALUES( NOW(), CAST( ? as #dbType#) ) ON
         // CONFLICT DO NOTHING";
-        sqlInsertItemValue = "INSERT INTO #tableName# (TIME, VALUE) VALUES( #tablePrimaryValue#, CAST( ? as #dbType#) )";
+        sqlInsertItemValue = "INSERT INTO #tableName# (#itemIdKey#TIME, VALUE) VALUES( #itemIdValue##tablePrimaryValue#, CAST( ? as #dbType#) )";
+        // ON CONFLICT needs PostgreSQL 9.5
+        sqlInsertItemValueRows = "INSERT INTO #tableName# (#itemIdKey#TIME, VALUE) VALUES #valueRows# ON CONFLICT (#itemIdKey#TIME) DO UPDATE SET VALUE=EXCLUDED.VALUE";
+        sqlInsertItemValueRow = "( #itemIdValue##timeValue#, CAST( ? as #dbType#) )";
+        // declarative partitioning with a primary key needs PostgreSQL 11
+        sqlCreatePartitionedItemTable = "CREATE TABLE IF NOT EXISTS #tableName# (time #tablePrimaryKey# NOT NULL, value #dbType#, PRIMARY KEY(time)) PARTITION BY RANGE (time)";
+        // one row with a null name for a partitioned table without partitions, none for other tables
+        sqlGetPartitions = "SELECT c.relname FROM pg_class p LEFT JOIN pg_inherits i ON i.inhparent=p.oid "
+                + "LEFT JOIN pg_class c ON c.oid=i.inhrelid WHERE p.relname='#tableName#' AND p.relkind='p'";
+        sqlAddPartition = "CREATE TABLE IF NOT EXISTS #partitionName# PARTITION OF #tableName# FOR VALUES FROM (#partitionStart#) TO ('#partitionEnd#')";
+        sqlDropPartition = "DROP TABLE #partitionName#";
+        sqlTimeBucket = "FLOOR(EXTRACT(EPOCH FROM time) / #bucketSeconds#)";
+        sqlTimeBucketLocal = true;
     }
 
     /**
@@ -78,6 +94,7 @@ public class JdbcPostgresqlDAO extends JdbcBaseDAO {
         sqlTypes.put("ROLLERSHUTTERITEM", "SMALLINT");
         sqlTypes.put("STRINGITEM", "VARCHAR");
         sqlTypes.put("SWITCHITEM", "VARCHAR");
+        sqlTypes.put("tableRollupValue", "DOUBLE PRECISION");
         logger.debug("JDBC::initSqlTypes: Initialized the type array sqlTypes={}", sqlTypes.values());
     }
 
@@ -101,6 +118,14 @@ public class JdbcPostgresqlDAO extends JdbcBaseDAO {
     /**************
      * ITEMS DAOs *
      **************/
+    /**
+     * Partitions by the time column itself, which needs declarative partitioning with primary keys of PostgreSQL 11.
+     */
+    @Override
+    protected boolean isPartitioningSupported() {
+        return dbMeta == null || dbMeta.getDbMajorVersion() >= 11;
+    }
+
     @Override
     public ItemsVO doCreateItemsTableIfNot(ItemsVO vo) {
         String sql = StringUtilsExt.replaceArrayMerge(sqlCreateItemsTableIfNot,
@@ -131,77 +156,108 @@ public class JdbcPostgresqlDAO extends JdbcBaseDAO {
     /*************
      * ITEM DAOs *
      *************/
+    /**
+     * Writes larger lists of values with COPY FROM STDIN in CSV format, which is far faster than batched inserts.
+     * If the copy fails, e.g. because of a duplicate time, the values are written with multi-row upserts.
+     */
     @Override
-    public void doStoreItemValue(Item item, ItemVO vo) {
-        vo = storeItemValueProvider(item, vo);
-        String sql = StringUtilsExt.replaceArrayMerge(sqlInsertItemValue,
-                new String[] { "#tableName#", "#dbType#", "#tablePrimaryValue#" },
-                new String[] { vo.getTableName(), vo.getDbType(), sqlTypes.get("tablePrimaryValue") });
-        Object[] params = new Object[] { vo.getValue() };
-        logger.debug("JDBC::doStoreItemValue sql={} value='{}'", sql, vo.getValue());
-        Yank.execute(sql, params);
-    }
-
-    @Override
-    public List<HistoricItem> doGetHistItemFilterQuery(Item item, FilterCriteria filter, int numberDecimalcount,
-            String table, String name) {
-        String sql = histItemFilterQueryProvider(filter, numberDecimalcount, table, name);
-        logger.debug("JDBC::doGetHistItemFilterQuery sql={}", sql);
-        List<Object[]> m = Yank.queryObjectArrays(sql, null);
-
-        List<HistoricItem> items = new ArrayList<>();
-        for (int i = 0; i < m.size(); i++) {
-            items.add(new JdbcItem(item.getName(), getState(item, m.get(i)[1]), objectAsDate(m.get(i)[0])));
+    public boolean doStoreItemValues(List<ItemVO> vol) {
+        if (vol.size() < COPY_MIN_ROWS) {
+            return super.doStoreItemValues(vol);
+        }
+        ItemVO first = vol.get(0);
+        String table = storageTableProvider(first.getTableName(), first.getItemType());
+        String sql = itemKeyProvider("COPY " + table + " (#itemIdKey#time, value) FROM STDIN WITH (FORMAT csv)",
+                first.getTableName());
+        // item id column of narrow schema
+        String rowPrefix = narrowSchema ? getItemId(first.getTableName()) + "," : "";
+        logger.debug("JDBC::doStoreItemValues sql={} size={}", sql, vol.size());
+        try (Connection con = Yank.getDefaultConnectionPool().getConnection()) {
+            CopyIn copy = con.unwrap(PGConnection.class).getCopyAPI().copyIn(sql);
+            try {
+                StringBuilder sb = new StringBuilder(COPY_BUFFER_SIZE + 256);
+                for (ItemVO vo : vol) {
+                    appendCopyRow(sb, rowPrefix, vo);
+                    if (sb.length() >= COPY_BUFFER_SIZE) {
+                        writeToCopy(copy, sb);
+                    }
+                }
+                writeToCopy(copy, sb);
+                long rows = copy.endCopy();
+                logger.debug("JDBC::doStoreItemValues copied {} rows into '{}'", rows, table);
+                return true;
+            } finally {
+                if (copy.isActive()) {
+                    copy.cancelCopy();
+                }
+            }
+        } catch (SQLException e) {
+            logger.warn("JDBC::doStoreItemValues: COPY into '{}' failed, writing {} values as upsert: {}", table,
+                    vol.size(), e.getMessage());
+            return super.doStoreItemValues(vol);
         }
-        return items;
     }
 
     /****************************
      * SQL generation Providers *
      ****************************/
-    static final DateTimeFormatter JDBC_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    @Override
+    protected String insertItemValueProvider(String tableName, String dbType, String timeValue) {
+        return StringUtilsExt.replaceArrayMerge(sqlInsertItemValue,
+                new String[] { "#tableName#", "#dbType#", "#tablePrimaryValue#" },
+                new String[] { tableName, dbType, timeValue });
+    }
 
     /**
-     * @param filter
-     * @param numberDecimalcount
-     * @param table
-     * @return
+     * Partitions are tables of their own, their names have to be unique in the schema.
      */
-    private String histItemFilterQueryProvider(FilterCriteria filter, int numberDecimalcount, String table,
-            String simpleName) {
-        logger.debug(
-                "JDBC::getHistItemFilterQueryProvider filter = {}, numberDecimalcount = {}, table = {}, simpleName = {}",
-                filter.toString(), numberDecimalcount, table, simpleName);
-
-        String filterString = "";
-        if (filter.getBeginDate() != null) {
-            filterString += filterString.isEmpty() ? " WHERE" : " AND";
-            filterString += " TIME>'" + JDBC_DATE_FORMAT.format(filter.getBeginDateZoned()) + "'";
-        }
-        if (filter.getEndDate() != null) {
-            filterString += filterString.isEmpty() ? " WHERE" : " AND";
-            filterString += " TIME<'" + JDBC_DATE_FORMAT.format(filter.getEndDateZoned()) + "'";
-        }
-        filterString += (filter.getOrdering() == Ordering.ASCENDING) ? " ORDER BY time ASC" : " ORDER BY time DESC";
-        if (filter.getPageSize() != 0x7fffffff) {
-            // see:
-            // http://www.jooq.org/doc/3.5/manual/sql-building/sql-statements/select-statement/limit-clause/
-            filterString += " OFFSET " + filter.getPageNumber() * filter.getPageSize() + " LIMIT "
-                    + filter.getPageSize();
-        }
-        String queryString = "NUMBERITEM".equalsIgnoreCase(simpleName) && numberDecimalcount > -1
+    @Override
+    protected String partitionNameProvider(String table, String period) {
+        return table + "_p" + period;
+    }
+
+    @Override
+    protected String histItemSelectProvider(int numberDecimalcount, String table, String simpleName) {
+        return "NUMBERITEM".equalsIgnoreCase(simpleName) && numberDecimalcount > -1
                 ? "SELECT time, ROUND(CAST (value AS numeric)," + numberDecimalcount + ") FROM " + table
                 : "SELECT time, value FROM " + table;
-        if (!filterString.isEmpty()) {
-            queryString += filterString;
-        }
-        logger.debug("JDBC::query queryString = {}", queryString);
-        return queryString;
+    }
+
+    @Override
+    protected String limitClauseProvider() {
+        // see:
+        // http://www.jooq.org/doc/3.5/manual/sql-building/sql-statements/select-statement/limit-clause/
+        return " LIMIT ? OFFSET ?";
+    }
+
+    @Override
+    protected Object[] limitParamsProvider(int offset, int size) {
+        return new Object[] { size, offset };
     }
 
     /*****************
      * H E L P E R S *
      *****************/
+    private void appendCopyRow(StringBuilder sb, String rowPrefix, ItemVO vo) {
+        // timestamp without time zone, written in local time like bound Timestamps
+        sb.append(rowPrefix).append(timeAsObject(vo.getTime())).append(',');
+        Object v = vo.getValue();
+        if (v instanceof BigDecimal) {
+            sb.append(((BigDecimal) v).toPlainString());
+        } else if (v instanceof Number || v instanceof Timestamp) {
+            sb.append(v);
+        } else if (v != null) {
+            // quoted, as an unquoted empty value is NULL
+            sb.append('"').append(v.toString().replace("\"", "\"\"")).append('"');
+        }
+        sb.append('\n');
+    }
+
+    private void writeToCopy(CopyIn copy, StringBuilder sb) throws SQLException {
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+        copy.writeToCopy(bytes, 0, bytes.length);
+        sb.setLength(0);
+    }
 
     /******************************
      * public Getters and Setters *
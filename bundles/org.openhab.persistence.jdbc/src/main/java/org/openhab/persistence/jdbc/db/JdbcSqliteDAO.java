@@ -12,9 +12,12 @@
  */
 package org.openhab.persistence.jdbc.db;
 
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+
 import org.knowm.yank.Yank;
-import org.openhab.core.items.Item;
-import org.openhab.persistence.jdbc.model.ItemVO;
 import org.openhab.persistence.jdbc.model.ItemsVO;
 import org.openhab.persistence.jdbc.utils.StringUtilsExt;
 import org.slf4j.Logger;
@@ -46,7 +49,14 @@ public class JdbcSqliteDAO extends JdbcBaseDAO {
                                              // "PRAGMA SCHEMA_VERSION";
         sqlIfTableExists = "SELECT name FROM sqlite_master WHERE type='table' AND name='#searchTable#'";
         sqlCreateItemsTableIfNot = "CREATE TABLE IF NOT EXISTS #itemsManageTable# (ItemId INTEGER PRIMARY KEY AUTOINCREMENT, #colname# #coltype# NOT NULL)";
-        sqlInsertItemValue = "INSERT OR IGNORE INTO #tableName# (TIME, VALUE) VALUES( #tablePrimaryValue#, CAST( ? as #dbType#) )";
+        sqlInsertItemValue = "INSERT OR IGNORE INTO #tableName# (#itemIdKey#TIME, VALUE) VALUES( #itemIdValue##tablePrimaryValue#, CAST( ? as #dbType#) )";
+        sqlInsertItemValueRows = "INSERT OR REPLACE INTO #tableName# (#itemIdKey#TIME, VALUE) VALUES #valueRows#";
+        sqlInsertItemValueRow = "( #itemIdValue##timeValue#, CAST( ? as #dbType#) )";
+        sqlTimeBucket = "CAST(strftime('%s', time) AS INTEGER) / #bucketSeconds#";
+        sqlTimeBucketLocal = true;
+        // no range partitioning, retention deletes old values
+        sqlCreatePartitionedItemTable = null;
+        sqlGetPartitions = null;
     }
 
     /**
@@ -89,24 +99,29 @@ public class JdbcSqliteDAO extends JdbcBaseDAO {
     /*************
      * ITEM DAOs *
      *************/
-    @Override
-    public void doStoreItemValue(Item item, ItemVO vo) {
-        vo = storeItemValueProvider(item, vo);
-        String sql = StringUtilsExt.replaceArrayMerge(sqlInsertItemValue,
-                new String[] { "#tableName#", "#dbType#", "#tablePrimaryValue#" },
-                new String[] { vo.getTableName(), vo.getDbType(), sqlTypes.get("tablePrimaryValue") });
-        Object[] params = new Object[] { vo.getValue() };
-        logger.debug("JDBC::doStoreItemValue sql={} value='{}'", sql, vo.getValue());
-        Yank.execute(sql, params);
-    }
 
     /****************************
      * SQL generation Providers *
      ****************************/
+    @Override
+    protected String insertItemValueProvider(String tableName, String dbType, String timeValue) {
+        return StringUtilsExt.replaceArrayMerge(sqlInsertItemValue,
+                new String[] { "#tableName#", "#dbType#", "#tablePrimaryValue#" },
+                new String[] { tableName, dbType, timeValue });
+    }
 
     /*****************
      * H E L P E R S *
      *****************/
+    static final DateTimeFormatter SQLITE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    /**
+     * Same text format and local time as "tablePrimaryValue", as SQLite stores TIMESTAMP columns as plain text.
+     */
+    @Override
+    protected Object timeAsObject(Date time) {
+        return SQLITE_TIME_FORMAT.format(LocalDateTime.ofInstant(time.toInstant(), ZoneId.systemDefault()));
+    }
 
     /******************************
      * public Getters and Setters *
@@ -12,8 +12,13 @@
  */
 package org.openhab.persistence.jdbc.internal;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -22,8 +27,10 @@ import java.util.regex.Pattern;
 
 import org.apache.commons.lang.StringUtils;
 import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.config.core.ConfigConstants;
 import org.openhab.persistence.jdbc.db.JdbcBaseDAO;
-import org.openhab.persistence.jdbc.utils.MovingAverage;
+import org.openhab.persistence.jdbc.model.PartitionInterval;
+import org.openhab.persistence.jdbc.model.RollupInterval;
 import org.openhab.persistence.jdbc.utils.StringUtilsExt;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -58,15 +65,42 @@ public class JdbcConfiguration {
     private String tableNamePrefix = "item";
     private int tableIdDigitCount = 4;
     private boolean rebuildTableNames = false;
+    private boolean tableNarrowSchema = false;
 
     private int errReconnectThreshold = 0;
 
-    public int timerCount = 0;
-    public int time1000Statements = 0;
-    public long timer1000 = 0;
-    public MovingAverage timeAverage50arr = new MovingAverage(50);
-    public MovingAverage timeAverage100arr = new MovingAverage(100);
-    public MovingAverage timeAverage200arr = new MovingAverage(200);
+    // buffered write mode, disabled if batchSize is 0
+    private int batchSize = 0;
+    private int batchFlushInterval = 1000;
+    private int batchQueueCapacity = 10000;
+    private boolean batchBlockOnOverflow = false;
+
+    // rows fetched per round trip by streaming queries
+    private int queryFetchSize = 1000;
+
+    // number of items whose newest value is kept in memory, disabled if 0
+    private int lastValueCacheSize = 0;
+
+    // number of cached history query results, disabled if 0
+    private int queryCacheSize = 0;
+
+    // retention, values of items without a matching pattern are kept
+    private PartitionInterval partitionInterval = null;
+    private String retention = null;
+
+    // connection pool of history queries, e.g. on a read replica, disabled if both are null
+    private String readUrl = null;
+    private String readUser = null;
+    private String readPassword = null;
+    private String readMaximumPoolSize = null;
+
+    // rollup tables, finest first, disabled if empty
+    private List<RollupInterval> rollups = new ArrayList<>();
+
+    // spool of values written while the database is unreachable, size in MB, disabled if 0
+    private int spoolSize = 0;
+    private String spoolDir = null;
+
     public boolean enableLogTime = false;
 
     public JdbcConfiguration(Map<Object, Object> configuration) {
@@ -173,12 +207,127 @@ public class JdbcConfiguration {
             logger.debug("JDBC::updateConfig: rebuildTableNames={}", rebuildTableNames);
         }
 
+        String ns = (String) configuration.get("tableNarrowSchema");
+        if (StringUtils.isNotBlank(ns)) {
+            tableNarrowSchema = Boolean.parseBoolean(ns);
+            logger.debug("JDBC::updateConfig: tableNarrowSchema={}", tableNarrowSchema);
+        }
+        dBDAO.setNarrowSchema(tableNarrowSchema);
+
+        String bs = (String) configuration.get("batchSize");
+        if (StringUtils.isNotBlank(bs) && StringUtils.isNumeric(bs)) {
+            batchSize = Integer.parseInt(bs);
+            logger.debug("JDBC::updateConfig: batchSize={}", batchSize);
+        }
+
+        String bi = (String) configuration.get("batchFlushInterval");
+        if (StringUtils.isNotBlank(bi) && StringUtils.isNumeric(bi)) {
+            batchFlushInterval = Integer.parseInt(bi);
+            logger.debug("JDBC::updateConfig: batchFlushInterval={}", batchFlushInterval);
+        }
+
+        String bq = (String) configuration.get("batchQueueCapacity");
+        if (StringUtils.isNotBlank(bq) && StringUtils.isNumeric(bq)) {
+            batchQueueCapacity = Math.max(Integer.parseInt(bq), 1);
+            logger.debug("JDBC::updateConfig: batchQueueCapacity={}", batchQueueCapacity);
+        }
+
+        String bo = (String) configuration.get("batchOverflowPolicy");
+        if (StringUtils.isNotBlank(bo)) {
+            batchBlockOnOverflow = "block".equalsIgnoreCase(bo);
+            logger.debug("JDBC::updateConfig: batchBlockOnOverflow={}", batchBlockOnOverflow);
+        }
+
+        String fs = (String) configuration.get("queryFetchSize");
+        if (StringUtils.isNotBlank(fs) && StringUtils.isNumeric(fs)) {
+            queryFetchSize = Math.max(Integer.parseInt(fs), 1);
+            logger.debug("JDBC::updateConfig: queryFetchSize={}", queryFetchSize);
+        }
+
+        String lc = (String) configuration.get("lastValueCacheSize");
+        if (StringUtils.isNotBlank(lc) && StringUtils.isNumeric(lc)) {
+            lastValueCacheSize = Integer.parseInt(lc);
+            logger.debug("JDBC::updateConfig: lastValueCacheSize={}", lastValueCacheSize);
+        }
+
+        String qc = (String) configuration.get("queryCacheSize");
+        if (StringUtils.isNotBlank(qc) && StringUtils.isNumeric(qc)) {
+            queryCacheSize = Integer.parseInt(qc);
+            logger.debug("JDBC::updateConfig: queryCacheSize={}", queryCacheSize);
+        }
+
+        String pi = (String) configuration.get("partitionInterval");
+        if (StringUtils.isNotBlank(pi) && !"none".equalsIgnoreCase(pi.trim())) {
+            try {
+                partitionInterval = PartitionInterval.valueOf(pi.trim().toUpperCase());
+                logger.debug("JDBC::updateConfig: partitionInterval={}", partitionInterval);
+            } catch (IllegalArgumentException e) {
+                logger.warn("JDBC::updateConfig: unknown partitionInterval '{}', partitioning is disabled", pi);
+            }
+        }
+        dBDAO.setPartitionInterval(partitionInterval);
+
+        String rp = (String) configuration.get("retention");
+        if (StringUtils.isNotBlank(rp)) {
+            retention = rp.trim();
+            logger.debug("JDBC::updateConfig: retention={}", retention);
+        }
+
+        String ru = (String) configuration.get("rollups");
+        if (StringUtils.isNotBlank(ru)) {
+            for (String interval : ru.split(",")) {
+                RollupInterval r = RollupInterval.parse(interval);
+                if (r == null) {
+                    logger.warn("JDBC::updateConfig: ignoring rollup '{}', expected minutes, hours or days, e.g. 5m",
+                            interval.trim());
+                } else if (rollups.stream().noneMatch(o -> o.getSeconds() == r.getSeconds())) {
+                    rollups.add(r);
+                }
+            }
+            rollups.sort(Comparator.comparingInt(RollupInterval::getSeconds));
+            logger.debug("JDBC::updateConfig: rollups={}", rollups);
+        }
+
+        String ss = (String) configuration.get("spoolSize");
+        if (StringUtils.isNotBlank(ss) && StringUtils.isNumeric(ss)) {
+            spoolSize = Integer.parseInt(ss);
+            logger.debug("JDBC::updateConfig: spoolSize={}", spoolSize);
+        }
+
+        String sd = (String) configuration.get("spoolDir");
+        if (StringUtils.isNotBlank(sd)) {
+            spoolDir = sd.trim();
+            logger.debug("JDBC::updateConfig: spoolDir={}", spoolDir);
+        }
+
         // undocumented
         String ac = (String) configuration.get("maximumPoolSize");
         if (StringUtils.isNotBlank(ac)) {
             dBDAO.databaseProps.setProperty("maximumPoolSize", ac);
         }
 
+        String ro = (String) configuration.get("readUrl");
+        if (StringUtils.isNotBlank(ro)) {
+            readUrl = ro.trim();
+            logger.debug("JDBC::updateConfig: readUrl={}", readUrl);
+        }
+
+        String rs = (String) configuration.get("readUser");
+        if (StringUtils.isNotBlank(rs)) {
+            readUser = rs;
+        }
+
+        String rw = (String) configuration.get("readPassword");
+        if (StringUtils.isNotBlank(rw)) {
+            readPassword = rw;
+        }
+
+        String rm = (String) configuration.get("readMaximumPoolSize");
+        if (StringUtils.isNotBlank(rm) && StringUtils.isNumeric(rm)) {
+            readMaximumPoolSize = rm;
+            logger.debug("JDBC::updateConfig: readMaximumPoolSize={}", readMaximumPoolSize);
+        }
+
         // undocumented
         String ic = (String) configuration.get("minimumIdle");
         if (StringUtils.isNotBlank(ic)) {
@@ -318,6 +467,35 @@ public class JdbcConfiguration {
         return dBDAO.databaseProps;
     }
 
+    /**
+     * Derives the pool of history queries from the default pool, with the url, user, password and size of the
+     * read replica where configured.
+     *
+     * @return properties of the read pool, null if history queries share the default pool
+     */
+    public Properties getHikariReadConfiguration() {
+        if (readUrl == null && readMaximumPoolSize == null) {
+            return null;
+        }
+        Properties p = new Properties();
+        p.putAll(dBDAO.databaseProps);
+        if (readUrl != null) {
+            p.setProperty(p.containsKey("jdbcUrl") ? "jdbcUrl" : "dataSource.url", readUrl);
+            p.setProperty("readOnly", "true");
+        }
+        if (readUser != null) {
+            p.setProperty("dataSource.user", readUser);
+        }
+        if (readPassword != null) {
+            p.setProperty("dataSource.password", readPassword);
+        }
+        if (readMaximumPoolSize != null) {
+            p.setProperty("maximumPoolSize", readMaximumPoolSize);
+        }
+        p.setProperty("poolName", JdbcMapper.READ_POOL);
+        return p;
+    }
+
     public String getName() {
         // return serviceName;
         return name;
@@ -339,6 +517,10 @@ public class JdbcConfiguration {
         return rebuildTableNames;
     }
 
+    public boolean getTableNarrowSchema() {
+        return tableNarrowSchema;
+    }
+
     public int getNumberDecimalcount() {
         return numberDecimalcount;
     }
@@ -351,6 +533,64 @@ public class JdbcConfiguration {
         return tableIdDigitCount;
     }
 
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getBatchFlushInterval() {
+        return batchFlushInterval;
+    }
+
+    public int getBatchQueueCapacity() {
+        return batchQueueCapacity;
+    }
+
+    public boolean getBatchBlockOnOverflow() {
+        return batchBlockOnOverflow;
+    }
+
+    public int getQueryFetchSize() {
+        return queryFetchSize;
+    }
+
+    public int getLastValueCacheSize() {
+        return lastValueCacheSize;
+    }
+
+    public int getQueryCacheSize() {
+        return queryCacheSize;
+    }
+
+    public PartitionInterval getPartitionInterval() {
+        return partitionInterval;
+    }
+
+    /**
+     * @return comma separated item name patterns with their retention in days, e.g. "Sensor_*:30,*:365"
+     */
+    public String getRetention() {
+        return retention;
+    }
+
+    /**
+     * @return intervals of the rollup tables, finest first
+     */
+    public List<RollupInterval> getRollups() {
+        return rollups;
+    }
+
+    /**
+     * @return maximum size of the spool in MB, 0 if values are not spooled
+     */
+    public int getSpoolSize() {
+        return spoolSize;
+    }
+
+    public Path getSpoolDir() {
+        return spoolDir != null ? Paths.get(spoolDir)
+                : Paths.get(ConfigConstants.getUserDataFolder(), "persistence", "jdbc", "spool");
+    }
+
     public JdbcBaseDAO getDBDAO() {
         return dBDAO;
     }
@@ -374,6 +614,8 @@ public class JdbcConfiguration {
         dBDAO.initAfterFirstDbConnection();
         // Running once again to prior external configured SqlTypes!
         setSqlTypes();
+        // statements rendered so far may use outdated sqlTypes
+        dBDAO.clearItemTables();
         this.dbConnected = dbConnected;
     }
 
@@ -12,17 +12,35 @@
  */
 package org.openhab.persistence.jdbc.internal;
 
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import org.knowm.yank.Yank;
+import org.openhab.core.items.GroupItem;
 import org.openhab.core.items.Item;
 import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.FilterCriteria.Ordering;
 import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.types.State;
+import org.openhab.core.types.UnDefType;
+import org.openhab.persistence.jdbc.db.JdbcBaseDAO;
+import org.openhab.persistence.jdbc.model.Aggregation;
 import org.openhab.persistence.jdbc.model.ItemVO;
 import org.openhab.persistence.jdbc.model.ItemsVO;
+import org.openhab.persistence.jdbc.model.RollupInterval;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,12 +53,28 @@ public class JdbcMapper {
     private final Logger logger = LoggerFactory.getLogger(JdbcMapper.class);
 
     // Error counter - used to reconnect to database on error
-    protected int errCnt;
-    protected boolean initialized = false;
+    protected volatile int errCnt;
+    protected volatile boolean initialized = false;
     protected JdbcConfiguration conf = null;
-    protected Map<String, String> sqlTables = new HashMap<>();
-    private long afterAccessMin = 10000;
-    private long afterAccessMax = 0;
+    // item name to table name, read lock-free on every store
+    protected Map<String, String> sqlTables = new ConcurrentHashMap<>();
+    private final Map<String, Object> tableLocks = new ConcurrentHashMap<>();
+    protected volatile JdbcWriteBuffer writeBuffer = null;
+    protected volatile JdbcRetention retention = null;
+    protected volatile JdbcRollup rollup = null;
+    protected volatile JdbcMigration migration = null;
+    protected volatile JdbcSpool spool = null;
+    // newest value per item name, answers "latest state" queries without a database round trip
+    private volatile Map<String, HistoricItem> lastValues = null;
+    // results of history queries, e.g. of charts refreshed every few seconds
+    private volatile JdbcQueryCache queryCache = null;
+    protected final JdbcMetrics metrics = new JdbcMetrics(this);
+    private static final int HISTORY_CHUNK_SIZE = 10000;
+    // values younger than this may still be queued by the write buffer and are rolled up by a later run
+    private static final long ROLLUP_DELAY = 60000;
+    private static final int MIGRATION_THREADS = 8;
+    // Yank pool of history queries, if configured
+    protected static final String READ_POOL = "jdbc-read";
     private static final String ITEM_NAME_PATTERN = "[^a-zA-Z_0-9\\-]";
 
     /*****************
@@ -62,6 +96,9 @@ public class JdbcMapper {
             }
         }
         logTime("pingDB", timerStart, System.currentTimeMillis());
+        if (!ret) {
+            metrics.recordError("pingDB");
+        }
         return ret;
     }
 
@@ -69,7 +106,7 @@ public class JdbcMapper {
         logger.debug("JDBC::getDB");
         long timerStart = System.currentTimeMillis();
         String res = conf.getDBDAO().doGetDB();
-        logTime("pingDB", timerStart, System.currentTimeMillis());
+        logTime("getDB", timerStart, System.currentTimeMillis());
         return res;
     }
 
@@ -126,6 +163,27 @@ public class JdbcMapper {
         logTime("updateItemTableNames", timerStart, System.currentTimeMillis());
     }
 
+    /**
+     * @return false if the table could not be renamed
+     */
+    public boolean renameItemTable(ItemVO vo) {
+        logger.debug("JDBC::renameItemTable {} to {}", vo.getTableName(), vo.getNewTableName());
+        long timerStart = System.currentTimeMillis();
+        boolean renamed;
+        try {
+            renamed = conf.getDBDAO().doRenameItemTable(vo);
+        } catch (RuntimeException e) {
+            metrics.recordError("renameItemTable");
+            throw e;
+        }
+        if (!renamed) {
+            metrics.recordError("renameItemTable");
+            return false;
+        }
+        logTime("renameItemTable", timerStart, System.currentTimeMillis());
+        return true;
+    }
+
     public ItemVO createItemTable(ItemVO vo) {
         logger.debug("JDBC::createItemTable");
         long timerStart = System.currentTimeMillis();
@@ -134,18 +192,213 @@ public class JdbcMapper {
         return vo;
     }
 
-    public Item storeItemValue(Item item) {
-        logger.debug("JDBC::storeItemValue: item={}", item.toString());
+    public boolean storeItemValue(Item item) {
+        return storeItemValue(item, item.getState());
+    }
+
+    /**
+     * Writes a value directly or queues it in the write buffer. A value dropped because the write buffer is full is
+     * not reported, it is subject to the overflow policy of the buffer.
+     *
+     * @return false if the value could not be written, e.g. because the connection to the database was lost
+     */
+    public boolean storeItemValue(Item item, State state) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("JDBC::storeItemValue: item={}", item.toString());
+        }
         String tableName = getTable(item);
         if (tableName == null) {
-            logger.error("JDBC::store: Unable to store item '{}'.", item.getName());
-            return item;
+            metrics.recordError("storeItemValue");
+            return false;
+        }
+        JdbcMigration m = migration;
+        if (m != null && m.isPending(tableName)) {
+            // values are held until the table has been renamed
+            ItemVO vo = conf.getDBDAO().doPrepareItemValue(item, state, new Date(), new ItemVO(tableName, null));
+            return storeItemValues(tableName, Collections.singletonList(vo));
+        }
+        JdbcWriteBuffer wb = writeBuffer;
+        if (wb != null) {
+            ItemVO vo = conf.getDBDAO().doPrepareItemValue(item, state, new Date(), new ItemVO(tableName, null));
+            if (wb.offer(vo)) {
+                // the last value cache is updated once the value has been written
+                return true;
+            }
+            if (wb.isRunning()) {
+                // dropped, the buffer is full
+                return true;
+            }
+            // the buffer is stopping, the value is written directly
+        }
+        if (lastValues != null || queryCache != null) {
+            // the time is bound instead of taken by the database, so the caches hold the time of the stored row
+            ItemVO vo = conf.getDBDAO().doPrepareItemValue(item, state, new Date(), new ItemVO(tableName, null));
+            return storeItemValues(tableName, Collections.singletonList(vo));
         }
         long timerStart = System.currentTimeMillis();
-        conf.getDBDAO().doStoreItemValue(item, new ItemVO(tableName, null));
+        if (!conf.getDBDAO().doStoreItemValue(item, state, new ItemVO(tableName, null))) {
+            metrics.recordError("storeItemValue");
+            return false;
+        }
         logTime("storeItemValue", timerStart, System.currentTimeMillis());
         errCnt = 0;
-        return item;
+        return true;
+    }
+
+    /**
+     * @return false if the values could not be written
+     */
+    public boolean storeItemValues(String tableName, List<ItemVO> vol) {
+        logger.debug("JDBC::storeItemValues: table={} size={}", tableName, vol.size());
+        JdbcMigration m = migration;
+        if (m != null && m.hold(tableName, vol)) {
+            return true;
+        }
+        long timerStart = System.currentTimeMillis();
+        boolean written;
+        try {
+            written = conf.getDBDAO().doStoreItemValues(vol);
+        } catch (RuntimeException e) {
+            metrics.recordError("storeItemValues");
+            throw e;
+        }
+        if (!written) {
+            metrics.recordError("storeItemValues");
+            return false;
+        }
+        logTime("storeItemValues", timerStart, System.currentTimeMillis());
+        if (lastValues != null) {
+            for (ItemVO vo : vol) {
+                if (vo.getItem() != null) {
+                    putLastValue(vo.getItem(), vo.getValue(), vo.getTime());
+                }
+            }
+        }
+        JdbcQueryCache qc = queryCache;
+        if (qc != null) {
+            qc.write(tableName, vol, this::toCachedItem);
+        }
+        JdbcRollup ru = rollup;
+        if (ru != null) {
+            addLateValue(ru, tableName, vol);
+        }
+        errCnt = 0;
+        return true;
+    }
+
+    /**
+     * Records the oldest of the written values which may belong to buckets rolled up already, e.g. values replayed
+     * from the spool, imported or flushed late by the write buffer.
+     */
+    private void addLateValue(JdbcRollup ru, String tableName, List<ItemVO> vol) {
+        long rolledUp = System.currentTimeMillis() - ROLLUP_DELAY;
+        Date oldest = null;
+        for (ItemVO vo : vol) {
+            if (vo.getTime().getTime() < rolledUp && (oldest == null || vo.getTime().before(oldest))) {
+                oldest = vo.getTime();
+            }
+        }
+        if (oldest != null) {
+            ru.addLateValue(tableName, oldest);
+        }
+    }
+
+    /**
+     * Spools a value which could not be written because the database is unreachable, if the spool is enabled.
+     *
+     * @return false if the value is lost
+     */
+    protected boolean spoolItemValue(Item item, State state) {
+        return spoolItemValue(item, state, new Date());
+    }
+
+    /**
+     * Spools prepared values which could not be written, e.g. a failed batch of the write buffer.
+     *
+     * @return number of values which are lost
+     */
+    protected int spoolItemValues(List<ItemVO> vol) {
+        int lost = 0;
+        for (ItemVO vo : vol) {
+            if (vo.getItem() == null || vo.getState() == null
+                    || !spoolItemValue(vo.getItem(), vo.getState(), vo.getTime())) {
+                lost++;
+            }
+        }
+        return lost;
+    }
+
+    private boolean spoolItemValue(Item item, State state, Date time) {
+        JdbcSpool sp = spool;
+        if (sp == null) {
+            return false;
+        }
+        if (!sp.append(item.getName(), state, time.getTime())) {
+            return false;
+        }
+        logger.debug("JDBC::spoolItemValue: spooled value of item '{}'", item.getName());
+        if (lastValues != null && isLastValueItem(item)) {
+            mergeLastValue(conf.getDBDAO().toHistoricItem(item, state, time, conf.getNumberDecimalcount()));
+        }
+        return true;
+    }
+
+    /**
+     * Imports historic values of an item, e.g. to backfill a new database. Values are written in chunks,
+     * of values with the same time only the last one is kept.
+     */
+    /**
+     * @return the number of values stored, or -1 if writing failed; the chunks written before stay stored
+     */
+    public int storeItemHistory(Item item, Iterable<HistoricItem> values) {
+        String tableName = getTable(item);
+        if (tableName == null) {
+            logger.error("JDBC::storeItemHistory: Unable to store history of item '{}'.", item.getName());
+            metrics.recordError("storeItemHistory");
+            return -1;
+        }
+        Map<Long, ItemVO> chunk = new LinkedHashMap<>();
+        int cnt = 0;
+        for (HistoricItem hi : values) {
+            if (hi.getState() instanceof UnDefType) {
+                continue;
+            }
+            ItemVO vo = conf.getDBDAO().doPrepareItemValue(item, hi.getState(),
+                    new Date(hi.getTimestamp().getTime()), new ItemVO(tableName, null));
+            if (vo.getValue() == null) {
+                continue;
+            }
+            chunk.put(vo.getTime().getTime(), vo);
+            if (chunk.size() >= HISTORY_CHUNK_SIZE) {
+                if (!storeItemHistoryChunk(item, tableName, chunk, cnt)) {
+                    return -1;
+                }
+                cnt += chunk.size();
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            if (!storeItemHistoryChunk(item, tableName, chunk, cnt)) {
+                return -1;
+            }
+            cnt += chunk.size();
+        }
+        logger.debug("JDBC::storeItemHistory: stored {} values of item '{}'", cnt, item.getName());
+        return cnt;
+    }
+
+    private boolean storeItemHistoryChunk(Item item, String tableName, Map<Long, ItemVO> chunk, int storedCnt) {
+        String error = "see above";
+        try {
+            if (storeItemValues(tableName, new ArrayList<>(chunk.values()))) {
+                return true;
+            }
+        } catch (RuntimeException e) {
+            error = e.getMessage();
+        }
+        logger.error("JDBC::storeItemHistory: writing {} values of item '{}' failed, aborted after {} values: {}",
+                chunk.size(), item.getName(), storedCnt, error);
+        return false;
     }
 
     public List<HistoricItem> getHistItemFilterQuery(FilterCriteria filter, int numberDecimalcount, String table,
@@ -153,11 +406,27 @@ public class JdbcMapper {
         logger.debug(
                 "JDBC::getHistItemFilterQuery filter='{}' numberDecimalcount='{}' table='{}' item='{}' itemName='{}'",
                 (filter != null), numberDecimalcount, table, item, item.getName());
+        String source = readTable(table);
         if (table != null) {
+            // values read from a table still to be renamed are not cached under its new name
+            JdbcQueryCache qc = source.equals(table) ? queryCache : null;
+            long version = 0;
+            if (qc != null) {
+                List<HistoricItem> cached = qc.get(filter, table);
+                if (cached != null) {
+                    metrics.increment("queryCache.hit");
+                    return cached;
+                }
+                metrics.increment("queryCache.miss");
+                version = qc.getVersion(table);
+            }
             long timerStart = System.currentTimeMillis();
-            List<HistoricItem> r = conf.getDBDAO().doGetHistItemFilterQuery(item, filter, numberDecimalcount, table,
+            List<HistoricItem> r = conf.getDBDAO().doGetHistItemFilterQuery(item, filter, numberDecimalcount, source,
                     item.getName());
-            logTime("insertItemValue", timerStart, System.currentTimeMillis());
+            logTime("getHistItemFilterQuery", timerStart, System.currentTimeMillis());
+            if (qc != null) {
+                qc.put(filter, table, item, r, version);
+            }
             return r;
         } else {
             logger.error("JDBC::getHistItemFilterQuery: TABLE is NULL; cannot get data from non-existent table.");
@@ -165,6 +434,175 @@ public class JdbcMapper {
         return null;
     }
 
+    public Iterable<HistoricItem> streamHistItemFilterQuery(FilterCriteria filter, int numberDecimalcount,
+            String table, Item item) {
+        logger.debug("JDBC::streamHistItemFilterQuery fetchSize='{}' table='{}' itemName='{}'",
+                conf.getQueryFetchSize(), table, item.getName());
+        if (table != null) {
+            try {
+                return conf.getDBDAO().doStreamHistItemFilterQuery(item, filter, numberDecimalcount, readTable(table),
+                        item.getName(), conf.getQueryFetchSize());
+            } catch (SQLException e) {
+                logger.error("JDBC::streamHistItemFilterQuery: query for item '{}' failed: {}", item.getName(),
+                        e.getMessage());
+                metrics.recordError("streamHistItemFilterQuery");
+            }
+        } else {
+            logger.error("JDBC::streamHistItemFilterQuery: TABLE is NULL; cannot get data from non-existent table.");
+        }
+        return null;
+    }
+
+    public List<HistoricItem> getHistItemAggregateQuery(FilterCriteria filter, Aggregation aggregation,
+            int bucketSeconds, String table, Item item) {
+        logger.debug("JDBC::getHistItemAggregateQuery aggregation='{}' bucketSeconds='{}' table='{}' itemName='{}'",
+                aggregation, bucketSeconds, table, item.getName());
+        if (table != null) {
+            long timerStart = System.currentTimeMillis();
+            String source = readTable(table);
+            JdbcRollup marks = rollup;
+            RollupInterval ri = marks != null ? getRollup(marks, item, table, aggregation, bucketSeconds) : null;
+            List<HistoricItem> r = ri != null
+                    ? conf.getDBDAO().doGetRollupAggregateQuery(item, filter, aggregation, bucketSeconds, table, ri,
+                            marks.getHighWaterMark(table, ri))
+                    : conf.getDBDAO().doGetHistItemAggregateQuery(item, filter, aggregation, bucketSeconds, source);
+            logTime("getHistItemAggregateQuery", timerStart, System.currentTimeMillis());
+            return r;
+        } else {
+            logger.error("JDBC::getHistItemAggregateQuery: TABLE is NULL; cannot get data from non-existent table.");
+        }
+        return null;
+    }
+
+    /**********************
+     * QUERY RESULT CACHE *
+     **********************/
+    protected void startQueryCache() {
+        int capacity = conf.getQueryCacheSize();
+        logger.debug("JDBC::startQueryCache: capacity={}", capacity);
+        queryCache = capacity > 0 ? new JdbcQueryCache(capacity) : null;
+    }
+
+    /**
+     * Converts a written value the way a history query of the item returns it.
+     */
+    private HistoricItem toCachedItem(Item item, ItemVO vo) {
+        return conf.getDBDAO().toHistoricItem(item, vo.getValue(), vo.getTime(), conf.getNumberDecimalcount());
+    }
+
+    /********************
+     * LAST VALUE CACHE *
+     ********************/
+    protected void startLastValueCache() {
+        int capacity = conf.getLastValueCacheSize();
+        logger.debug("JDBC::startLastValueCache: capacity={}", capacity);
+        if (capacity <= 0) {
+            lastValues = null;
+            return;
+        }
+        lastValues = Collections.synchronizedMap(new LinkedHashMap<String, HistoricItem>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, HistoricItem> eldest) {
+                return size() > capacity;
+            }
+        });
+    }
+
+    /**
+     * @return true if the filter asks for nothing but the newest value of an item
+     */
+    protected boolean isLastValueQuery(FilterCriteria filter) {
+        return filter.getPageSize() == 1 && filter.getPageNumber() == 0 && filter.getOrdering() == Ordering.DESCENDING
+                && filter.getState() == null;
+    }
+
+    /**
+     * Answers a newest value query from the cache.
+     *
+     * @return the cached value, or null if the database has to be asked
+     */
+    protected HistoricItem getLastValue(FilterCriteria filter) {
+        Map<String, HistoricItem> lv = lastValues;
+        if (lv == null || !isLastValueQuery(filter)) {
+            return null;
+        }
+        HistoricItem hi = lv.get(filter.getItemName());
+        if (hi == null) {
+            metrics.increment("lastValueCache.miss");
+            return null;
+        }
+        // the newest value overall is the answer as long as it lies within the requested range
+        Date time = hi.getTimestamp();
+        if (filter.getBeginDate() != null && !time.toInstant().isAfter(filter.getBeginDateZoned().toInstant())) {
+            return null;
+        }
+        if (filter.getEndDate() != null && !time.toInstant().isBefore(filter.getEndDateZoned().toInstant())) {
+            return null;
+        }
+        metrics.increment("lastValueCache.hit");
+        return hi;
+    }
+
+    /**
+     * Remembers the result of a newest value query that was answered by the database.
+     */
+    protected void putLastValue(FilterCriteria filter, List<HistoricItem> items) {
+        if (lastValues != null && isLastValueQuery(filter) && filter.getEndDate() == null && items.size() == 1) {
+            mergeLastValue(items.get(0));
+        }
+    }
+
+    private void putLastValue(Item item, Object value, Date time) {
+        if (lastValues != null && value != null && isLastValueItem(item)) {
+            mergeLastValue(conf.getDBDAO().toHistoricItem(item, value, time, conf.getNumberDecimalcount()));
+        }
+    }
+
+    /**
+     * Groups are queried with the type of their base item, those without a usable one are not cached.
+     */
+    private boolean isLastValueItem(Item item) {
+        if (item instanceof GroupItem) {
+            Item base = ((GroupItem) item).getBaseItem();
+            return base != null && !(base instanceof GroupItem);
+        }
+        return true;
+    }
+
+    private void mergeLastValue(HistoricItem hi) {
+        Map<String, HistoricItem> lv = lastValues;
+        if (lv != null) {
+            // a concurrent query must not replace a newer stored value
+            lv.merge(hi.getName(), hi, (o, n) -> n.getTimestamp().before(o.getTimestamp()) ? o : n);
+        }
+    }
+
+    /**
+     * Loads the newest value of all given items with as few queries as possible.
+     */
+    public void warmLastValues(Collection<Item> items) {
+        if (lastValues == null) {
+            return;
+        }
+        long timerStart = System.currentTimeMillis();
+        Map<String, Item> tableItems = new LinkedHashMap<>();
+        for (Item item : items) {
+            String table = sqlTables.get(item.getName());
+            if (table != null && isLastValueItem(item)) {
+                tableItems.put(table, item);
+            }
+        }
+        List<HistoricItem> vol = conf.getDBDAO().doGetLastItemValues(tableItems, conf.getNumberDecimalcount());
+        for (HistoricItem hi : vol) {
+            mergeLastValue(hi);
+        }
+        logTime("warmLastValues", timerStart, System.currentTimeMillis());
+        logger.debug("JDBC::warmLastValues: loaded {} of {} items in {} ms", vol.size(), tableItems.size(),
+                System.currentTimeMillis() - timerStart);
+    }
+
     /***********************
      * DATABASE CONNECTION *
      ***********************/
@@ -173,6 +611,12 @@ public class JdbcMapper {
         if (conf.isDriverAvailable() && !conf.isDbConnected()) {
             logger.info("JDBC::openConnection: Driver is available::Yank setupDataSource");
             Yank.setupDefaultConnectionPool(conf.getHikariConfiguration());
+            Properties readConfiguration = conf.getHikariReadConfiguration();
+            if (readConfiguration != null) {
+                logger.info("JDBC::openConnection: history queries use the connection pool '{}'", READ_POOL);
+                Yank.setupConnectionPool(READ_POOL, readConfiguration);
+                conf.getDBDAO().setReadPool(READ_POOL);
+            }
             conf.setDbConnected(true);
             return true;
         } else if (!conf.isDriverAvailable()) {
@@ -186,10 +630,278 @@ public class JdbcMapper {
     protected void closeConnection() {
         logger.debug("JDBC::closeConnection");
         // Closes all open connection pools
+        if (conf.getDBDAO().getReadPool() != null) {
+            conf.getDBDAO().setReadPool(null);
+            Yank.releaseConnectionPool(READ_POOL);
+        }
         Yank.releaseDefaultConnectionPool();
         conf.setDbConnected(false);
     }
 
+    protected void startWriteBuffer() {
+        stopWriteBuffer();
+        if (conf.getBatchSize() > 0) {
+            logger.debug("JDBC::startWriteBuffer: batchSize={}", conf.getBatchSize());
+            JdbcWriteBuffer wb = new JdbcWriteBuffer(this, conf);
+            wb.start();
+            writeBuffer = wb;
+        }
+    }
+
+    protected void stopWriteBuffer() {
+        JdbcWriteBuffer wb = writeBuffer;
+        if (wb != null) {
+            logger.debug("JDBC::stopWriteBuffer: writing {} queued values", wb.getQueueSize());
+            writeBuffer = null;
+            wb.stop();
+        }
+    }
+
+    /**
+     * Starts the retention worker if values expire or item tables are partitioned.
+     */
+    protected void startRetention(Supplier<Collection<Item>> items) {
+        stopRetention();
+        if (conf.getPartitionInterval() != null && !conf.getTableNarrowSchema()
+                && !conf.getDBDAO().isPartitioningEnabled()) {
+            logger.warn("JDBC::startRetention: partitionInterval is ignored, item tables cannot be partitioned on "
+                    + "this database, expired values are deleted row by row");
+        }
+        if (conf.getRetention() != null || conf.getDBDAO().isPartitioningEnabled()) {
+            logger.debug("JDBC::startRetention: retention={} partitionInterval={}", conf.getRetention(),
+                    conf.getPartitionInterval());
+            JdbcRetention r = new JdbcRetention(this, conf, items);
+            r.start();
+            retention = r;
+        }
+    }
+
+    protected void stopRetention() {
+        JdbcRetention r = retention;
+        if (r != null) {
+            retention = null;
+            r.stop();
+        }
+    }
+
+    /**
+     * Adds the partitions of the coming period to the table of an item, and drops its values older than
+     * retentionDays, by whole partitions if the table is partitioned.
+     *
+     * @param retentionDays -1 to keep all values
+     * @return false if the item has no table
+     */
+    protected boolean applyRetention(Item item, int retentionDays) {
+        String table = sqlTables.get(item.getName());
+        if (table == null || isMigrating(table)) {
+            return false;
+        }
+        long timerStart = System.currentTimeMillis();
+        try {
+            boolean partitioned = conf.getDBDAO().doEnsurePartitions(table);
+            if (retentionDays >= 0) {
+                LocalDateTime cutoff = LocalDateTime.now().minusDays(retentionDays);
+                if (partitioned) {
+                    conf.getDBDAO().doDropPartitionsBefore(table, cutoff);
+                } else {
+                    int cnt = conf.getDBDAO().doDeleteItemValuesBefore(item, table, cutoff);
+                    logger.debug("JDBC::applyRetention: deleted {} values of item '{}' before {}", cnt,
+                            item.getName(), cutoff);
+                }
+                JdbcQueryCache qc = queryCache;
+                if (qc != null) {
+                    qc.invalidate(table);
+                }
+            }
+        } catch (RuntimeException e) {
+            metrics.recordError("applyRetention");
+            logger.warn("JDBC::applyRetention: table '{}' of item '{}' failed: {}", table, item.getName(),
+                    e.getMessage());
+        }
+        logTime("applyRetention", timerStart, System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * Starts the rollup worker if rollup tables are configured.
+     */
+    protected void startRollups(Supplier<Collection<Item>> items) {
+        stopRollups();
+        if (!conf.getRollups().isEmpty()) {
+            logger.debug("JDBC::startRollups: rollups={}", conf.getRollups());
+            JdbcRollup r = new JdbcRollup(this, conf, items);
+            r.start();
+            rollup = r;
+        }
+    }
+
+    protected void stopRollups() {
+        JdbcRollup r = rollup;
+        if (r != null) {
+            rollup = null;
+            r.stop();
+        }
+    }
+
+    /**
+     * Starts the spool if it is enabled, independent of the database being reachable.
+     */
+    protected void startSpool(Function<String, Item> items) {
+        stopSpool();
+        if (conf.getSpoolSize() > 0) {
+            JdbcSpool sp = new JdbcSpool(this, conf, items);
+            try {
+                sp.start();
+                spool = sp;
+            } catch (IOException e) {
+                logger.error("JDBC::startSpool: spool directory '{}' is not usable, values are not spooled: {}",
+                        conf.getSpoolDir(), e.getMessage());
+            }
+        }
+    }
+
+    protected void stopSpool() {
+        JdbcSpool sp = spool;
+        if (sp != null) {
+            spool = null;
+            sp.stop();
+        }
+    }
+
+    /**
+     * Rolls up the values of a numeric item stored after the high-water mark of each rollup table, up to the last
+     * bucket which ended ROLLUP_DELAY ago. A rollup table is the source of a coarser one whose buckets it divides.
+     *
+     * @return false if the item has no table or is not numeric
+     */
+    protected boolean rollupItem(Item item, JdbcRollup marks) {
+        String table = sqlTables.get(item.getName());
+        if (table == null || isMigrating(table) || !isRollupItem(item)) {
+            return false;
+        }
+        long timerStart = System.currentTimeMillis();
+        JdbcBaseDAO dao = conf.getDBDAO();
+        List<RollupInterval> done = new ArrayList<>();
+        Date late = marks.takeLateValue(table);
+        try {
+            for (RollupInterval r : conf.getRollups()) {
+                RollupInterval source = null;
+                Date limit = new Date(System.currentTimeMillis() - ROLLUP_DELAY);
+                for (RollupInterval d : done) {
+                    if (r.getSeconds() % d.getSeconds() == 0) {
+                        source = d;
+                    }
+                }
+                if (source != null && marks.getHighWaterMark(table, source).before(limit)) {
+                    limit = marks.getHighWaterMark(table, source);
+                }
+                Date to = dao.timeBucketStart(limit, r.getSeconds());
+                Date from = marks.getHighWaterMark(table, r);
+                if (from == null) {
+                    dao.doCreateRollupTable(item, table, r);
+                    from = dao.doGetRollupHighWaterMark(item, table, r);
+                }
+                if (from != null && late != null && late.before(from)) {
+                    // values were stored below the high-water mark, their buckets are rolled up again
+                    from = dao.timeBucketStart(late, r.getSeconds());
+                }
+                if (from == null || from.before(to)) {
+                    int cnt = dao.doRollupItemValues(item, table, r, source, from, to);
+                    if (cnt < 0) {
+                        // the high-water mark stays, the buckets are rolled up by the next run
+                        metrics.recordError("rollupItem");
+                        break;
+                    }
+                    logger.debug("JDBC::rollupItem: rolled up {} buckets of item '{}' into '{}' before {}", cnt,
+                            item.getName(), r, to);
+                    from = to;
+                }
+                marks.setHighWaterMark(table, r, from);
+                done.add(r);
+            }
+        } catch (RuntimeException e) {
+            metrics.recordError("rollupItem");
+            logger.warn("JDBC::rollupItem: table '{}' of item '{}' failed: {}", table, item.getName(),
+                    e.getMessage());
+        }
+        if (late != null && done.size() < conf.getRollups().size()) {
+            marks.addLateValue(table, late);
+        }
+        logTime("rollupItem", timerStart, System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * @return the coarsest rollup table whose buckets divide bucketSeconds and which has been rolled up, null if the
+     *         values are aggregated from the item table
+     */
+    protected RollupInterval getRollup(JdbcRollup marks, Item item, String table, Aggregation aggregation,
+            int bucketSeconds) {
+        if (!aggregation.isNumeric() || !isRollupItem(item)) {
+            return null;
+        }
+        List<RollupInterval> rollups = conf.getRollups();
+        for (int i = rollups.size() - 1; i >= 0; i--) {
+            RollupInterval r = rollups.get(i);
+            if (bucketSeconds % r.getSeconds() == 0 && marks.getHighWaterMark(table, r) != null) {
+                return r;
+            }
+        }
+        return null;
+    }
+
+    private boolean isRollupItem(Item item) {
+        String itemType = conf.getDBDAO().getItemType(item);
+        return "NUMBERITEM".equals(itemType) || "DIMMERITEM".equals(itemType)
+                || "ROLLERSHUTTERITEM".equals(itemType);
+    }
+
+    /**
+     * Starts renaming item tables in the background, in parallel on the connections of the pool but one.
+     */
+    protected void startMigration(List<ItemVO> renames) {
+        int threads = Math.max(1,
+                Math.min(MIGRATION_THREADS, Yank.getDefaultConnectionPool().getMaximumPoolSize() - 1));
+        JdbcMigration m = new JdbcMigration(this, renames, threads);
+        migration = m;
+        m.start();
+    }
+
+    protected void migrationFinished(JdbcMigration m) {
+        if (migration == m) {
+            migration = null;
+        }
+        conf.getDBDAO().clearItemTables();
+        JdbcQueryCache qc = queryCache;
+        if (qc != null) {
+            qc.clear();
+        }
+    }
+
+    /**
+     * @return true if the table is still to be renamed, it is neither rolled up nor cleaned up until then
+     */
+    protected boolean isMigrating(String table) {
+        JdbcMigration m = migration;
+        return m != null && table != null && m.isPending(table);
+    }
+
+    /**
+     * @return the name the values of a table are read from, its old name while it is still to be renamed
+     */
+    protected String readTable(String table) {
+        JdbcMigration m = migration;
+        return m != null && table != null ? m.getReadTable(table) : table;
+    }
+
+    /**
+     * Keeps the old name of a table which could not be renamed, so the values of its item are still written to
+     * and read from it.
+     */
+    protected void keepItemTable(ItemVO vo) {
+        sqlTables.replaceAll((itemName, t) -> t.equals(vo.getNewTableName()) ? vo.getTableName() : t);
+    }
+
     protected boolean checkDBAccessability() {
         // Check if connection is valid
         if (initialized) {
@@ -214,7 +926,10 @@ public class JdbcMapper {
     protected void checkDBSchema() {
         // Create Items Table if does not exist
         createItemsTableIfNot(new ItemsVO());
-        if (conf.getRebuildTableNames()) {
+        if (conf.getRebuildTableNames() && conf.getTableNarrowSchema()) {
+            logger.warn("JDBC::checkDBSchema: rebuildTableNames is ignored, there are no item tables in narrow schema");
+        }
+        if (conf.getRebuildTableNames() && !conf.getTableNarrowSchema()) {
             formatTableNames();
         } else {
             List<ItemsVO> al;
@@ -223,16 +938,13 @@ public class JdbcMapper {
             al = getItemIDTableNames();
             for (int i = 0; i < al.size(); i++) {
                 String t = getTableName(al.get(i).getItemid(), al.get(i).getItemname());
+                conf.getDBDAO().putItemId(t, al.get(i).getItemid());
                 sqlTables.put(al.get(i).getItemname(), t);
             }
         }
     }
 
     protected String getTable(Item item) {
-        int rowId = 0;
-        ItemsVO isvo;
-        ItemVO ivo;
-
         String itemName = item.getName();
         String tableName = sqlTables.get(itemName);
 
@@ -241,6 +953,29 @@ public class JdbcMapper {
             return tableName;
         }
 
+        // Only one thread creates the table of an item, concurrent callers wait for it and use its result
+        Object lock = tableLocks.computeIfAbsent(itemName, k -> new Object());
+        synchronized (lock) {
+            tableName = sqlTables.get(itemName);
+            if (tableName == null) {
+                tableName = createTable(item);
+            }
+            // keep the lock after a failure, so retries stay serialized
+            if (tableName != null) {
+                tableLocks.remove(itemName, lock);
+            }
+            return tableName;
+        }
+    }
+
+    private String createTable(Item item) {
+        int rowId = 0;
+        ItemsVO isvo;
+        ItemVO ivo;
+
+        String itemName = item.getName();
+        String tableName;
+
         logger.debug("JDBC::getTable: no table found for item '{}' in sqlTables", itemName);
 
         // Create a new entry in items table
@@ -261,10 +996,12 @@ public class JdbcMapper {
             return null;
         }
 
-        // Create table for item
+        // Create table for item, in narrow schema the table of its item type
         String dataType = conf.getDBDAO().getDataType(item);
+        conf.getDBDAO().putItemId(tableName, rowId);
         ivo = new ItemVO(tableName, itemName);
         ivo.setDbType(dataType);
+        ivo.setItemType(conf.getDBDAO().getItemType(item));
         ivo = createItemTable(ivo);
         logger.debug("JDBC::getTable: Table created for item '{}' with dataType {} in SQL database.", itemName,
                 dataType);
@@ -284,12 +1021,11 @@ public class JdbcMapper {
         return tableName;
     }
 
+    /**
+     * Loads the table names of all items and renames item tables whose names do not match the configured naming in
+     * the background, see {@link JdbcMigration}.
+     */
     private void formatTableNames() {
-        boolean tmpinit = initialized;
-        if (tmpinit) {
-            initialized = false;
-        }
-
         List<ItemsVO> al;
         Map<Integer, String> tableIds = new HashMap<>();
 
@@ -297,6 +1033,7 @@ public class JdbcMapper {
         al = getItemIDTableNames();
         for (int i = 0; i < al.size(); i++) {
             String t = getTableName(al.get(i).getItemid(), al.get(i).getItemname());
+            conf.getDBDAO().putItemId(t, al.get(i).getItemid());
             sqlTables.put(al.get(i).getItemname(), t);
             tableIds.put(al.get(i).getItemid(), t);
         }
@@ -311,6 +1048,11 @@ public class JdbcMapper {
             int id = -1;
             oldName = al.get(i).getTable_name();
             logger.info("JDBC::formatTableNames: found Table Name= {}", oldName);
+            if (conf.getDBDAO().isDerivedTable(oldName)) {
+                // no item table, e.g. a rollup table ending with _5m or a partition ending with _p202610
+                logger.debug("JDBC::formatTableNames: skipping Table Name= {}", oldName);
+                continue;
+            }
 
             if (oldName.startsWith(conf.getTableNamePrefix()) && !oldName.contains("_")) {
                 id = Integer.parseInt(oldName.substring(conf.getTableNamePrefix().length()));
@@ -339,9 +1081,9 @@ public class JdbcMapper {
             }
         }
 
-        //
-        updateItemTableNames(oldNewTablenames);
-        initialized = tmpinit;
+        if (!oldNewTablenames.isEmpty()) {
+            startMigration(oldNewTablenames);
+        }
     }
 
     private String getTableName(int rowId, String itemName) {
@@ -375,30 +1117,9 @@ public class JdbcMapper {
      * H E L P E R S *
      *****************/
     private void logTime(String me, long timerStart, long timerStop) {
+        JdbcOperationStats stats = metrics.record(me, timerStop - timerStart);
         if (conf.enableLogTime && logger.isInfoEnabled()) {
-            conf.timerCount++;
-            int timerDiff = (int) (timerStop - timerStart);
-            if (timerDiff < afterAccessMin) {
-                afterAccessMin = timerDiff;
-            }
-            if (timerDiff > afterAccessMax) {
-                afterAccessMax = timerDiff;
-            }
-            conf.timeAverage50arr.add(timerDiff);
-            conf.timeAverage100arr.add(timerDiff);
-            conf.timeAverage200arr.add(timerDiff);
-            if (conf.timerCount == 1) {
-                conf.timer1000 = System.currentTimeMillis();
-            }
-            if (conf.timerCount == 1001) {
-                conf.time1000Statements = Math.round(((int) (System.currentTimeMillis() - conf.timer1000)) / 1000);// Seconds
-                conf.timerCount = 0;
-            }
-            logger.info(
-                    "JDBC::logTime: '{}':\n afterAccess     = {} ms\n timeAverage50  = {} ms\n timeAverage100 = {} ms\n timeAverage200 = {} ms\n afterAccessMin  = {} ms\n afterAccessMax  = {} ms\n 1000Statements = {} sec\n statementCount = {}\n",
-                    me, timerDiff, conf.timeAverage50arr.getAverageInteger(),
-                    conf.timeAverage100arr.getAverageInteger(), conf.timeAverage200arr.getAverageInteger(),
-                    afterAccessMin, afterAccessMax, conf.time1000Statements, conf.timerCount);
+            logger.info("JDBC::logTime: '{}': afterAccess = {} ms, {}", me, timerStop - timerStart, stats);
         }
     }
 
@@ -0,0 +1,216 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.internal;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.knowm.yank.Yank;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+/**
+ * Collects per operation latencies, error counts and event counters of a {@link JdbcMapper}, and exposes them
+ * together with the state of its write buffer, spool and connection pools via JMX.
+ *
+ * @author agent - Initial contribution
+ */
+public class JdbcMetrics implements JdbcMetricsMXBean {
+    public static final String OBJECT_NAME = "org.openhab.persistence.jdbc:type=JdbcMetrics";
+
+    private final Logger logger = LoggerFactory.getLogger(JdbcMetrics.class);
+
+    private final JdbcMapper mapper;
+    private final Map<String, JdbcOperationStats> operations = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    public JdbcMetrics(JdbcMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    public JdbcOperationStats getOperation(String name) {
+        return operations.computeIfAbsent(name, k -> new JdbcOperationStats());
+    }
+
+    public JdbcOperationStats record(String name, long millis) {
+        JdbcOperationStats stats = getOperation(name);
+        stats.record(millis);
+        return stats;
+    }
+
+    public void recordError(String name) {
+        getOperation(name).recordError();
+    }
+
+    public void increment(String counter) {
+        counters.computeIfAbsent(counter, k -> new LongAdder()).increment();
+    }
+
+    public void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            logger.warn("JDBC::JdbcMetrics: registering '{}' failed: {}", OBJECT_NAME, e.getMessage());
+        }
+    }
+
+    public void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            logger.debug("JDBC::JdbcMetrics: unregistering '{}' failed: {}", OBJECT_NAME, e.getMessage());
+        }
+    }
+
+    @Override
+    public Map<String, JdbcOperationStats> getOperations() {
+        return new TreeMap<>(operations);
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> r = new TreeMap<>();
+        counters.forEach((k, v) -> r.put(k, v.sum()));
+        return r;
+    }
+
+    @Override
+    public int getConsecutiveErrors() {
+        return mapper.errCnt;
+    }
+
+    @Override
+    public int getWriteQueueSize() {
+        JdbcWriteBuffer wb = mapper.writeBuffer;
+        return wb != null ? wb.getQueueSize() : 0;
+    }
+
+    @Override
+    public long getWrittenCount() {
+        JdbcWriteBuffer wb = mapper.writeBuffer;
+        return wb != null ? wb.getWrittenCount() : 0;
+    }
+
+    @Override
+    public long getDroppedCount() {
+        JdbcWriteBuffer wb = mapper.writeBuffer;
+        return wb != null ? wb.getDroppedCount() : 0;
+    }
+
+    @Override
+    public long getSpoolPendingCount() {
+        JdbcSpool sp = mapper.spool;
+        return sp != null ? sp.getPendingCount() : 0;
+    }
+
+    @Override
+    public long getSpoolSize() {
+        JdbcSpool sp = mapper.spool;
+        return sp != null ? sp.getSize() : 0;
+    }
+
+    @Override
+    public long getSpooledCount() {
+        JdbcSpool sp = mapper.spool;
+        return sp != null ? sp.getSpooledCount() : 0;
+    }
+
+    @Override
+    public long getSpoolReplayedCount() {
+        JdbcSpool sp = mapper.spool;
+        return sp != null ? sp.getReplayedCount() : 0;
+    }
+
+    @Override
+    public long getSpoolDroppedCount() {
+        JdbcSpool sp = mapper.spool;
+        return sp != null ? sp.getDroppedCount() : 0;
+    }
+
+    @Override
+    public int getPoolActiveConnections() {
+        HikariPoolMXBean pool = getPool();
+        return pool != null ? pool.getActiveConnections() : 0;
+    }
+
+    @Override
+    public int getPoolIdleConnections() {
+        HikariPoolMXBean pool = getPool();
+        return pool != null ? pool.getIdleConnections() : 0;
+    }
+
+    @Override
+    public int getPoolTotalConnections() {
+        HikariPoolMXBean pool = getPool();
+        return pool != null ? pool.getTotalConnections() : 0;
+    }
+
+    @Override
+    public int getPoolThreadsAwaitingConnection() {
+        HikariPoolMXBean pool = getPool();
+        return pool != null ? pool.getThreadsAwaitingConnection() : 0;
+    }
+
+    @Override
+    public int getReadPoolActiveConnections() {
+        HikariPoolMXBean pool = getReadPool();
+        return pool != null ? pool.getActiveConnections() : 0;
+    }
+
+    @Override
+    public int getReadPoolThreadsAwaitingConnection() {
+        HikariPoolMXBean pool = getReadPool();
+        return pool != null ? pool.getThreadsAwaitingConnection() : 0;
+    }
+
+    @Override
+    public void reset() {
+        operations.values().forEach(JdbcOperationStats::reset);
+        counters.values().forEach(LongAdder::reset);
+    }
+
+    private HikariPoolMXBean getPool() {
+        if (mapper.conf == null || !mapper.conf.isDbConnected()) {
+            return null;
+        }
+        HikariDataSource ds = Yank.getDefaultConnectionPool();
+        return ds != null ? ds.getHikariPoolMXBean() : null;
+    }
+
+    private HikariPoolMXBean getReadPool() {
+        if (mapper.conf == null || !mapper.conf.isDbConnected() || mapper.conf.getDBDAO().getReadPool() == null) {
+            return null;
+        }
+        HikariDataSource ds = Yank.getConnectionPool(mapper.conf.getDBDAO().getReadPool());
+        return ds != null ? ds.getHikariPoolMXBean() : null;
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.internal;
+
+import java.util.Map;
+
+/**
+ * JMX view of the JDBC persistence service, registered as {@value JdbcMetrics#OBJECT_NAME}.
+ *
+ * @author agent - Initial contribution
+ */
+public interface JdbcMetricsMXBean {
+
+    /**
+     * @return latency histogram and error count per database operation
+     */
+    Map<String, JdbcOperationStats> getOperations();
+
+    /**
+     * @return event counters, e.g. last value cache hits and misses
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * @return database errors in a row, a reconnect is attempted when errReconnectThreshold is reached
+     */
+    int getConsecutiveErrors();
+
+    int getWriteQueueSize();
+
+    long getWrittenCount();
+
+    long getDroppedCount();
+
+    /**
+     * @return values spooled while the database was unreachable and not replayed yet
+     */
+    long getSpoolPendingCount();
+
+    /**
+     * @return bytes of the spool segment files
+     */
+    long getSpoolSize();
+
+    long getSpooledCount();
+
+    long getSpoolReplayedCount();
+
+    long getSpoolDroppedCount();
+
+    int getPoolActiveConnections();
+
+    int getPoolIdleConnections();
+
+    int getPoolTotalConnections();
+
+    int getPoolThreadsAwaitingConnection();
+
+    /**
+     * @return active connections of the pool of history queries, 0 if they share the default pool
+     */
+    int getReadPoolActiveConnections();
+
+    int getReadPoolThreadsAwaitingConnection();
+
+    void reset();
+}
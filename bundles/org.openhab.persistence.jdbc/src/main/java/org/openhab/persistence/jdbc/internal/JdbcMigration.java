@@ -0,0 +1,202 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openhab.persistence.jdbc.model.ItemVO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Renaming of item tables at startup. The renames run in the background, in batches on up to threads
+ * connections of the pool, while the service is already up.
+ *
+ * Values of an item whose table is still to be renamed are held in memory, up to MAX_HELD_VALUES per table, and
+ * written once its table has been renamed, while its values are read from the table under its old name. Renames
+ * which failed, e.g. because an embedded database was busy, are retried one by one at the end. A table which could
+ * not be renamed keeps its old name, its held values are written to it.
+ *
+ * @author agent - Initial contribution
+ */
+public class JdbcMigration implements Runnable {
+    private final Logger logger = LoggerFactory.getLogger(JdbcMigration.class);
+
+    private static final int BATCH_SIZE = 50;
+    private static final int MAX_HELD_VALUES = 10000;
+
+    private final JdbcMapper mapper;
+    private final List<ItemVO> renames;
+    private final int threads;
+    // values held per new table name, until the table has been renamed
+    private final Map<String, List<ItemVO>> held = new ConcurrentHashMap<>();
+    // rename per new table name, until the table has been renamed
+    private final Map<String, ItemVO> pending = new ConcurrentHashMap<>();
+    private final List<ItemVO> failed = new ArrayList<>();
+    private final AtomicInteger renamedCnt = new AtomicInteger();
+    private final AtomicInteger droppedCnt = new AtomicInteger();
+    private final AtomicInteger threadCnt = new AtomicInteger();
+    private final Thread worker;
+
+    public JdbcMigration(JdbcMapper mapper, List<ItemVO> renames, int threads) {
+        this.mapper = mapper;
+        this.renames = renames;
+        this.threads = threads;
+        for (ItemVO vo : renames) {
+            held.put(vo.getNewTableName(), new ArrayList<>());
+            pending.put(vo.getNewTableName(), vo);
+        }
+        this.worker = new Thread(this, "OH-jdbc-migration");
+        this.worker.setDaemon(true);
+    }
+
+    public void start() {
+        logger.info("JDBC::JdbcMigration: renaming {} item tables with {} threads", renames.size(), threads);
+        worker.start();
+    }
+
+    /**
+     * @return true if the table with the new name tableName is still to be renamed
+     */
+    public boolean isPending(String tableName) {
+        return held.containsKey(tableName);
+    }
+
+    /**
+     * @return the name the values of the table with the new name tableName are read from, its old name until it has
+     *         been renamed
+     */
+    public String getReadTable(String tableName) {
+        ItemVO vo = pending.get(tableName);
+        return vo != null ? vo.getTableName() : tableName;
+    }
+
+    /**
+     * Holds values of a table until it has been renamed. Values beyond MAX_HELD_VALUES per table are dropped.
+     *
+     * @return false if the table is not pending, the values have to be written by the caller
+     */
+    public boolean hold(String tableName, List<ItemVO> vol) {
+        return held.computeIfPresent(tableName, (k, l) -> {
+            int room = MAX_HELD_VALUES - l.size();
+            if (room >= vol.size()) {
+                l.addAll(vol);
+            } else {
+                l.addAll(vol.subList(0, Math.max(0, room)));
+                int dropped = vol.size() - Math.max(0, room);
+                int before = droppedCnt.getAndAdd(dropped);
+                if (before == 0 || before / 1000 != (before + dropped) / 1000) {
+                    logger.warn("JDBC::JdbcMigration: too many values held for table '{}', dropped so far: {}", k,
+                            droppedCnt.get());
+                }
+            }
+            return l;
+        }) != null;
+    }
+
+    @Override
+    public void run() {
+        long timerStart = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "OH-jdbc-migration-" + threadCnt.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i = 0; i < renames.size(); i += BATCH_SIZE) {
+            List<ItemVO> batch = renames.subList(i, Math.min(i + BATCH_SIZE, renames.size()));
+            executor.execute(() -> renameBatch(batch));
+        }
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.info("JDBC::JdbcMigration: renamed {} of {} item tables", renamedCnt.get(), renames.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<ItemVO> retry;
+        synchronized (failed) {
+            retry = new ArrayList<>(failed);
+        }
+        for (ItemVO vo : retry) {
+            rename(vo, true);
+        }
+        // tables which could not be renamed keep their old name, their values are written to it
+        for (ItemVO vo : new ArrayList<>(pending.values())) {
+            mapper.keepItemTable(vo);
+            release(vo, vo.getTableName());
+        }
+        logger.info("JDBC::JdbcMigration: renamed {} of {} item tables in {} ms", renamedCnt.get(), renames.size(),
+                System.currentTimeMillis() - timerStart);
+        mapper.migrationFinished(this);
+    }
+
+    private void renameBatch(List<ItemVO> batch) {
+        for (ItemVO vo : batch) {
+            rename(vo, false);
+        }
+        logger.info("JDBC::JdbcMigration: renamed {} of {} item tables", renamedCnt.get(), renames.size());
+    }
+
+    private void rename(ItemVO vo, boolean retry) {
+        String error = "see above";
+        try {
+            if (mapper.renameItemTable(vo)) {
+                renamedCnt.incrementAndGet();
+                release(vo, vo.getNewTableName());
+                return;
+            }
+        } catch (RuntimeException e) {
+            error = e.getMessage();
+        }
+        if (retry) {
+            logger.error("JDBC::JdbcMigration: Table '{}' could NOT be renamed to '{}': {}", vo.getTableName(),
+                    vo.getNewTableName(), error);
+        } else {
+            logger.debug("JDBC::JdbcMigration: renaming table '{}' failed, retrying later: {}", vo.getTableName(),
+                    error);
+            synchronized (failed) {
+                failed.add(vo);
+            }
+        }
+    }
+
+    /**
+     * Writes the values held for a table to tableName, its new name once it has been renamed.
+     */
+    private void release(ItemVO rename, String tableName) {
+        pending.remove(rename.getNewTableName());
+        List<ItemVO> vol = held.remove(rename.getNewTableName());
+        if (vol != null && !vol.isEmpty()) {
+            for (ItemVO vo : vol) {
+                vo.setTableName(tableName);
+            }
+            try {
+                if (!mapper.storeItemValues(tableName, vol)) {
+                    logger.error("JDBC::JdbcMigration: {} values held for table '{}' are lost", vol.size(), tableName);
+                }
+            } catch (RuntimeException e) {
+                logger.error("JDBC::JdbcMigration: {} values held for table '{}' are lost: {}", vol.size(),
+                        tableName, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram and error count of one database operation.
+ * Latencies are counted in fixed millisecond buckets, so recording is lock-free and needs no allocation.
+ *
+ * @author agent - Initial contribution
+ */
+public class JdbcOperationStats {
+    // upper bounds in ms, the last bucket counts everything slower
+    private static final long[] BUCKET_BOUNDS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000 };
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errorCount = new LongAdder();
+    private final LongAdder totalMillis = new LongAdder();
+    private final AtomicLong maxMillis = new AtomicLong();
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+
+    public void record(long millis) {
+        count.increment();
+        totalMillis.add(millis);
+        maxMillis.accumulateAndGet(millis, Math::max);
+        int i = 0;
+        while (i < BUCKET_BOUNDS.length && millis > BUCKET_BOUNDS[i]) {
+            i++;
+        }
+        buckets.incrementAndGet(i);
+    }
+
+    public void recordError() {
+        errorCount.increment();
+    }
+
+    public void reset() {
+        count.reset();
+        errorCount.reset();
+        totalMillis.reset();
+        maxMillis.set(0);
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getErrorCount() {
+        return errorCount.sum();
+    }
+
+    public double getMeanMillis() {
+        long c = count.sum();
+        return c == 0 ? 0 : (double) totalMillis.sum() / c;
+    }
+
+    public long getMaxMillis() {
+        return maxMillis.get();
+    }
+
+    public long getP50Millis() {
+        return percentileMillis(0.5);
+    }
+
+    public long getP95Millis() {
+        return percentileMillis(0.95);
+    }
+
+    public long getP99Millis() {
+        return percentileMillis(0.99);
+    }
+
+    /**
+     * @return upper bound of the bucket containing the given percentile, the maximum for the slowest bucket
+     */
+    private long percentileMillis(double percentile) {
+        long c = count.sum();
+        if (c == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile * c);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(BUCKET_BOUNDS[i], getMaxMillis());
+            }
+        }
+        return getMaxMillis();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d errors=%d mean=%.1f ms p50=%d ms p95=%d ms p99=%d ms max=%d ms", getCount(),
+                getErrorCount(), getMeanMillis(), getP50Millis(), getP95Millis(), getP99Millis(), getMaxMillis());
+    }
+}
@@ -25,13 +25,20 @@ import org.openhab.core.items.GroupItem;
 import org.openhab.core.items.Item;
 import org.openhab.core.items.ItemNotFoundException;
 import org.openhab.core.items.ItemRegistry;
+import org.openhab.core.library.items.ColorItem;
+import org.openhab.core.library.items.DimmerItem;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.items.RollershutterItem;
 import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.HistoricItem;
 import org.openhab.core.persistence.PersistenceItemInfo;
 import org.openhab.core.persistence.PersistenceService;
 import org.openhab.core.persistence.QueryablePersistenceService;
 import org.openhab.core.persistence.strategy.PersistenceStrategy;
+import org.openhab.core.types.State;
 import org.openhab.core.types.UnDefType;
+import org.openhab.persistence.jdbc.JdbcQueryablePersistenceService;
+import org.openhab.persistence.jdbc.model.Aggregation;
 import org.osgi.framework.BundleContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
@@ -49,9 +56,9 @@ import org.slf4j.LoggerFactory;
  *
  */
 @NonNullByDefault
-@Component(service = { PersistenceService.class,
-        QueryablePersistenceService.class }, configurationPid = "org.openhab.jdbc", configurationPolicy = ConfigurationPolicy.REQUIRE)
-public class JdbcPersistenceService extends JdbcMapper implements QueryablePersistenceService {
+@Component(service = { PersistenceService.class, QueryablePersistenceService.class,
+        JdbcQueryablePersistenceService.class }, configurationPid = "org.openhab.jdbc", configurationPolicy = ConfigurationPolicy.REQUIRE)
+public class JdbcPersistenceService extends JdbcMapper implements JdbcQueryablePersistenceService {
     private final Logger logger = LoggerFactory.getLogger(JdbcPersistenceService.class);
 
     @Reference
@@ -70,6 +77,7 @@ public class JdbcPersistenceService extends JdbcMapper implements QueryablePersi
     @Activate
     public void activate(BundleContext bundleContext, Map<Object, Object> configuration) {
         logger.debug("JDBC::activate: persistence service activated");
+        metrics.register();
         updateConfig(configuration);
     }
 
@@ -94,6 +102,11 @@ public class JdbcPersistenceService extends JdbcMapper implements QueryablePersi
     public void deactivate(final int reason) {
         logger.debug("JDBC::deactivate:  persistence bundle stopping. Disconnecting from database. reason={}", reason);
         // closeConnection();
+        stopRollups();
+        stopRetention();
+        stopWriteBuffer();
+        stopSpool();
+        metrics.unregister();
         initialized = false;
     }
 
@@ -124,15 +137,44 @@ public class JdbcPersistenceService extends JdbcMapper implements QueryablePersi
             return;
         }
         if (!checkDBAccessability()) {
+            if (spoolItemValue(item, item.getState())) {
+                return;
+            }
             logger.warn(
                     "JDBC::store:  No connection to database. Cannot persist item '{}'! Will retry connecting to database when error count:{} equals errReconnectThreshold:{}",
                     item, errCnt, conf.getErrReconnectThreshold());
             return;
         }
         long timerStart = System.currentTimeMillis();
-        storeItemValue(item);
-        logger.debug("JDBC: Stored item '{}' as '{}' in SQL database at {} in {} ms.", item.getName(),
-                item.getState().toString(), (new java.util.Date()).toString(), System.currentTimeMillis() - timerStart);
+        State state = item.getState();
+        if (!storeItemValue(item, state)) {
+            // the connection to the database may have been lost since it was checked
+            if (!spoolItemValue(item, state)) {
+                logger.error("JDBC::store: Unable to store item '{}'.", item.getName());
+            }
+            return;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("JDBC: Stored item '{}' as '{}' in SQL database at {} in {} ms.", item.getName(),
+                    item.getState().toString(), (new java.util.Date()).toString(),
+                    System.currentTimeMillis() - timerStart);
+        }
+    }
+
+    @Override
+    public int storeHistory(Item item, Iterable<HistoricItem> values) {
+        if (!checkDBAccessability()) {
+            logger.warn("JDBC::storeHistory: No connection to database. Cannot persist history of item '{}'!",
+                    item.getName());
+            return -1;
+        }
+        long timerStart = System.currentTimeMillis();
+        int cnt = storeItemHistory(item, values);
+        if (cnt >= 0) {
+            logger.debug("JDBC: Stored history of item '{}' in SQL database in {} ms.", item.getName(),
+                    System.currentTimeMillis() - timerStart);
+        }
+        return cnt;
     }
 
     @Override
@@ -150,6 +192,11 @@ public class JdbcPersistenceService extends JdbcMapper implements QueryablePersi
      */
     @Override
     public Iterable<HistoricItem> query(FilterCriteria filter) {
+        HistoricItem last = getLastValue(filter);
+        if (last != null) {
+            logger.debug("JDBC::query: newest value of '{}' answered from cache", filter.getItemName());
+            return Collections.singletonList(last);
+        }
         if (!checkDBAccessability()) {
             logger.warn("JDBC::query: database not connected, query aborted for item '{}'", filter.getItemName());
             return Collections.emptyList();
@@ -159,16 +206,94 @@ public class JdbcPersistenceService extends JdbcMapper implements QueryablePersi
             return Collections.emptyList();
         }
 
-        // Get the item name from the filter
-        // Also get the Item object so we can determine the type
+        Item item = getQueryItem(filter.getItemName());
+        if (item == null) {
+            return Collections.emptyList();
+        }
+        String table = getQueryTable(item, filter.getItemName());
+
+        long timerStart = System.currentTimeMillis();
+        List<HistoricItem> items = new ArrayList<>();
+        items = getHistItemFilterQuery(filter, conf.getNumberDecimalcount(), table, item);
+        putLastValue(filter, items);
+
+        logger.debug("JDBC::query: query for {} returned {} rows in {} ms", item.getName(), items.size(),
+                System.currentTimeMillis() - timerStart);
+
+        // Success
+        errCnt = 0;
+        return items;
+    }
+
+    @Override
+    public Iterable<HistoricItem> queryStream(FilterCriteria filter) {
+        if (!checkDBAccessability()) {
+            logger.warn("JDBC::queryStream: database not connected, query aborted for item '{}'",
+                    filter.getItemName());
+            return Collections.emptyList();
+        }
+        if (itemRegistry == null) {
+            logger.error("JDBC::queryStream: itemRegistry == null. Ignore and give up!");
+            return Collections.emptyList();
+        }
+        Item item = getQueryItem(filter.getItemName());
+        if (item == null) {
+            return Collections.emptyList();
+        }
+        String table = getQueryTable(item, filter.getItemName());
+
+        Iterable<HistoricItem> items = streamHistItemFilterQuery(filter, conf.getNumberDecimalcount(), table, item);
+        return items != null ? items : Collections.emptyList();
+    }
+
+    @Override
+    public Iterable<HistoricItem> query(FilterCriteria filter, Aggregation aggregation, int bucketSeconds) {
+        if (bucketSeconds <= 0) {
+            return query(filter);
+        }
+        if (!checkDBAccessability()) {
+            logger.warn("JDBC::query: database not connected, query aborted for item '{}'", filter.getItemName());
+            return Collections.emptyList();
+        }
+        if (itemRegistry == null) {
+            logger.error("JDBC::query: itemRegistry == null. Ignore and give up!");
+            return Collections.emptyList();
+        }
+        Item item = getQueryItem(filter.getItemName());
+        if (item == null) {
+            return Collections.emptyList();
+        }
+        String table = getQueryTable(item, filter.getItemName());
+
+        Aggregation agg = aggregation;
+        if (agg.isNumeric() && !isNumericItem(item)) {
+            logger.debug("JDBC::query: {} is not supported for item '{}', using LAST", agg, item.getName());
+            agg = Aggregation.LAST;
+        }
+
+        long timerStart = System.currentTimeMillis();
+        List<HistoricItem> items = getHistItemAggregateQuery(filter, agg, bucketSeconds, table, item);
+        if (items == null) {
+            return Collections.emptyList();
+        }
+
+        logger.debug("JDBC::query: {} query for {} returned {} rows in {} ms", agg, item.getName(), items.size(),
+                System.currentTimeMillis() - timerStart);
+
+        // Success
+        errCnt = 0;
+        return items;
+    }
+
+    private @Nullable Item getQueryItem(String itemName) {
+        // Get the Item object so we can determine the type
         Item item = null;
-        String itemName = filter.getItemName();
         logger.debug("JDBC::query: item is {}", itemName);
         try {
             item = itemRegistry.getItem(itemName);
         } catch (ItemNotFoundException e1) {
             logger.error("JDBC::query: unable to get item for itemName: '{}'. Ignore and give up!", itemName);
-            return Collections.emptyList();
+            return null;
         }
 
         if (item instanceof GroupItem) {
@@ -177,14 +302,17 @@ public class JdbcPersistenceService extends JdbcMapper implements QueryablePersi
             logger.debug("JDBC::query: item is instanceof GroupItem '{}'", itemName);
             if (item == null) {
                 logger.debug("JDBC::query: BaseItem of GroupItem is null. Ignore and give up!");
-                return Collections.emptyList();
+                return null;
             }
             if (item instanceof GroupItem) {
                 logger.debug("JDBC::query: BaseItem of GroupItem is a GroupItem too. Ignore and give up!");
-                return Collections.emptyList();
+                return null;
             }
         }
+        return item;
+    }
 
+    private String getQueryTable(Item item, String itemName) {
         String table = sqlTables.get(itemName);
         if (table == null) {
             logger.warn(
@@ -194,25 +322,48 @@ public class JdbcPersistenceService extends JdbcMapper implements QueryablePersi
             logger.warn("JDBC::query: try to generate the table for item '{}'", itemName);
             table = getTable(item);
         }
+        return table;
+    }
 
-        long timerStart = System.currentTimeMillis();
-        List<HistoricItem> items = new ArrayList<>();
-        items = getHistItemFilterQuery(filter, conf.getNumberDecimalcount(), table, item);
+    private void warmLastValues() {
+        if (itemRegistry == null) {
+            return;
+        }
+        warmLastValues(itemRegistry.getItems());
+    }
 
-        logger.debug("JDBC::query: query for {} returned {} rows in {} ms", item.getName(), items.size(),
-                System.currentTimeMillis() - timerStart);
+    private @Nullable Item findItem(String itemName) {
+        try {
+            return itemRegistry != null ? itemRegistry.getItem(itemName) : null;
+        } catch (ItemNotFoundException e) {
+            return null;
+        }
+    }
 
-        // Success
-        errCnt = 0;
-        return items;
+    private boolean isNumericItem(Item item) {
+        return item instanceof NumberItem || item instanceof RollershutterItem
+                || (item instanceof DimmerItem && !(item instanceof ColorItem));
     }
 
     public void updateConfig(Map<Object, Object> configuration) {
         logger.debug("JDBC::updateConfig");
 
+        stopRollups();
+        stopRetention();
+        stopWriteBuffer();
+        stopSpool();
         conf = new JdbcConfiguration(configuration);
+        if (conf.valid) {
+            startSpool(this::findItem);
+        }
         if (conf.valid && checkDBAccessability()) {
             checkDBSchema();
+            startLastValueCache();
+            startQueryCache();
+            warmLastValues();
+            startWriteBuffer();
+            startRetention(() -> itemRegistry != null ? itemRegistry.getItems() : Collections.emptyList());
+            startRollups(() -> itemRegistry != null ? itemRegistry.getItems() : Collections.emptyList());
             // connection has been established ... initialization completed!
             initialized = true;
         } else {
@@ -0,0 +1,287 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.internal;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+import org.openhab.core.items.Item;
+import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.FilterCriteria.Ordering;
+import org.openhab.core.persistence.HistoricItem;
+import org.openhab.persistence.jdbc.model.ItemVO;
+
+/**
+ * Bounded LRU cache of history query results, keyed by item table, time range, ordering and page.
+ *
+ * Cached results are kept consistent with the writes to their table: a value written after the newest cached one
+ * is appended to results whose range it falls into, in any other case, e.g. a value with an older time or a result
+ * whose pages would shift, the affected results are dropped. Results are only cached if no value was written to
+ * their table while they were queried.
+ *
+ * Returned results are read-only snapshots. Appending a value creates a new snapshot which shares the array of the
+ * previous one, so that keeping a result up to date does not copy it.
+ *
+ * @author agent - Initial contribution
+ */
+public class JdbcQueryCache {
+
+    // larger results are not cached, they would crowd out the many small chart queries
+    private static final int MAX_ROWS = 10000;
+
+    private final Map<String, Entry> entries;
+    private final Map<String, Set<Entry>> tableEntries = new HashMap<>();
+    // writes per table, a result is only cached if its table was not written while it was queried
+    private final Map<String, Long> tableVersions = new HashMap<>();
+
+    public JdbcQueryCache(int capacity) {
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > capacity) {
+                    unindex(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return the cached result, or null if the database has to be asked
+     */
+    public synchronized List<HistoricItem> get(FilterCriteria filter, String table) {
+        Entry e = entries.get(key(filter, table));
+        return e != null ? e.items : null;
+    }
+
+    /**
+     * @return the version to pass to {@link #put(FilterCriteria, String, Item, List, long)} for a query started now
+     */
+    public synchronized long getVersion(String table) {
+        return tableVersions.getOrDefault(table, 0L);
+    }
+
+    /**
+     * Caches the result of a query unless its table has been written since version.
+     */
+    public synchronized void put(FilterCriteria filter, String table, Item item, List<HistoricItem> items,
+            long version) {
+        if (items.size() > MAX_ROWS || getVersion(table) != version) {
+            return;
+        }
+        String key = key(filter, table);
+        Entry e = new Entry(key, table, item, filter, Items.of(items, filter.getOrdering() == Ordering.ASCENDING));
+        Entry old = entries.put(key, e);
+        if (old != null) {
+            unindex(old);
+        }
+        tableEntries.computeIfAbsent(table, k -> new HashSet<>()).add(e);
+    }
+
+    /**
+     * Applies values written to a table to its cached results.
+     *
+     * @param toHistoricItem converts a written value of an item the way a query would return it
+     */
+    public synchronized void write(String table, List<ItemVO> vol,
+            BiFunction<Item, ItemVO, HistoricItem> toHistoricItem) {
+        tableVersions.merge(table, 1L, Long::sum);
+        Set<Entry> set = tableEntries.get(table);
+        if (set == null) {
+            return;
+        }
+        for (Iterator<Entry> it = set.iterator(); it.hasNext();) {
+            Entry e = it.next();
+            boolean valid = true;
+            for (int i = 0; i < vol.size() && valid; i++) {
+                valid = e.write(vol.get(i), toHistoricItem);
+            }
+            if (!valid) {
+                it.remove();
+                entries.remove(e.key);
+            }
+        }
+        if (set.isEmpty()) {
+            tableEntries.remove(table);
+        }
+    }
+
+    /**
+     * Drops the cached results of a table, e.g. after values were deleted.
+     */
+    public synchronized void invalidate(String table) {
+        tableVersions.merge(table, 1L, Long::sum);
+        Set<Entry> set = tableEntries.remove(table);
+        if (set != null) {
+            for (Entry e : set) {
+                entries.remove(e.key);
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        tableEntries.clear();
+        tableVersions.replaceAll((k, v) -> v + 1);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void unindex(Entry e) {
+        Set<Entry> set = tableEntries.get(e.table);
+        if (set != null) {
+            set.remove(e);
+            if (set.isEmpty()) {
+                tableEntries.remove(e.table);
+            }
+        }
+    }
+
+    private static String key(FilterCriteria filter, String table) {
+        return table + '|' + begin(filter) + '|' + end(filter) + '|' + filter.getOrdering() + '|'
+                + filter.getPageSize() + '|' + filter.getPageNumber();
+    }
+
+    private static long begin(FilterCriteria filter) {
+        return filter.getBeginDate() != null ? filter.getBeginDateZoned().toInstant().toEpochMilli() : Long.MIN_VALUE;
+    }
+
+    private static long end(FilterCriteria filter) {
+        return filter.getEndDate() != null ? filter.getEndDateZoned().toInstant().toEpochMilli() : Long.MAX_VALUE;
+    }
+
+    /**
+     * A cached result, the filter is copied as the caller may reuse it.
+     */
+    private static class Entry {
+        private final String key;
+        private final String table;
+        private final Item item;
+        private final long begin;
+        private final long end;
+        private final boolean asc;
+        private final int pageSize;
+        private final int pageNumber;
+        private Items items;
+
+        private Entry(String key, String table, Item item, FilterCriteria filter, Items items) {
+            this.key = key;
+            this.table = table;
+            this.item = item;
+            this.begin = begin(filter);
+            this.end = end(filter);
+            this.asc = filter.getOrdering() == Ordering.ASCENDING;
+            this.pageSize = filter.getPageSize();
+            this.pageNumber = filter.getPageNumber();
+            this.items = items;
+        }
+
+        /**
+         * @return false if the result has to be dropped
+         */
+        private boolean write(ItemVO vo, BiFunction<Item, ItemVO, HistoricItem> toHistoricItem) {
+            long time = vo.getTime().getTime();
+            // the query filters TIME>begin AND TIME<end
+            if (time <= begin || time >= end) {
+                return true;
+            }
+            long newest = items.isEmpty() ? Long.MIN_VALUE : items.newest().getTimestamp().getTime();
+            if (pageSize != 0x7fffffff) {
+                // a new value shifts all pages of a descending result, and older values those of an ascending one
+                if (!asc || time <= newest) {
+                    return false;
+                }
+                if (items.size() == pageSize) {
+                    // the value belongs to a later page
+                    return true;
+                }
+                if (items.isEmpty() && pageNumber > 0) {
+                    // the value may belong to an earlier page
+                    return false;
+                }
+            } else if (time <= newest) {
+                return false;
+            }
+            items = items.append(toHistoricItem.apply(item, vo));
+            return true;
+        }
+    }
+
+    /**
+     * Read-only result over the first size values of an array in ascending order. Values appended later on lie
+     * beyond size, so a snapshot handed out before does not change.
+     */
+    private static class Items extends AbstractList<HistoricItem> implements RandomAccess {
+        private final HistoricItem[] values;
+        private final int size;
+        private final boolean asc;
+
+        private Items(HistoricItem[] values, int size, boolean asc) {
+            this.values = values;
+            this.size = size;
+            this.asc = asc;
+        }
+
+        private static Items of(List<HistoricItem> items, boolean asc) {
+            HistoricItem[] values = items.toArray(new HistoricItem[items.size() + 1]);
+            if (!asc) {
+                for (int i = 0, j = items.size() - 1; i < j; i++, j--) {
+                    HistoricItem v = values[i];
+                    values[i] = values[j];
+                    values[j] = v;
+                }
+            }
+            return new Items(values, items.size(), asc);
+        }
+
+        /**
+         * Only the newest snapshot of an entry may be appended to, older ones share its array.
+         */
+        private Items append(HistoricItem value) {
+            HistoricItem[] a = size < values.length ? values : Arrays.copyOf(values, size * 2 + 1);
+            a[size] = value;
+            return new Items(a, size + 1, asc);
+        }
+
+        private HistoricItem newest() {
+            return values[size - 1];
+        }
+
+        @Override
+        public HistoricItem get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return values[asc ? index : size - 1 - index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
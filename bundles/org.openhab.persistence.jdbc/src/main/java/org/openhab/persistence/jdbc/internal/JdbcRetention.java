@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import org.openhab.core.items.Item;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Retention of item values. A dedicated thread runs at start and every hour: it adds the partitions of the coming
+ * period to partitioned item tables, drops partitions which only hold expired values, and deletes expired values
+ * from tables which are not partitioned.
+ *
+ * The retention of an item is configured with comma separated item name patterns and days, e.g. "Sensor_*:30,*:365".
+ * The first matching pattern applies, '*' and '?' are wildcards. Values of items without a matching pattern are kept.
+ *
+ * @author agent - Initial contribution
+ */
+public class JdbcRetention implements Runnable {
+    private final Logger logger = LoggerFactory.getLogger(JdbcRetention.class);
+
+    private static final long RUN_INTERVAL = TimeUnit.HOURS.toMillis(1);
+
+    private final JdbcMapper mapper;
+    private final Supplier<Collection<Item>> items;
+    private final List<Pattern> patterns = new ArrayList<>();
+    private final List<Integer> days = new ArrayList<>();
+    private final Thread worker;
+    private final Object lock = new Object();
+    private volatile boolean running = true;
+
+    public JdbcRetention(JdbcMapper mapper, JdbcConfiguration conf, Supplier<Collection<Item>> items) {
+        this.mapper = mapper;
+        this.items = items;
+        if (conf.getRetention() != null) {
+            for (String rule : conf.getRetention().split(",")) {
+                int i = rule.lastIndexOf(':');
+                String d = i > 0 ? rule.substring(i + 1).trim() : "";
+                if (!d.matches("\\d+")) {
+                    logger.warn("JDBC::JdbcRetention: ignoring retention '{}', expected <item name pattern>:<days>",
+                            rule.trim());
+                    continue;
+                }
+                patterns.add(toPattern(rule.substring(0, i).trim()));
+                days.add(Integer.parseInt(d));
+            }
+        }
+        this.worker = new Thread(this, "OH-jdbc-retention");
+        this.worker.setDaemon(true);
+    }
+
+    private static Pattern toPattern(String glob) {
+        StringBuilder sb = new StringBuilder();
+        for (String part : glob.split("(?<=[*?])|(?=[*?])")) {
+            if ("*".equals(part)) {
+                sb.append(".*");
+            } else if ("?".equals(part)) {
+                sb.append('.');
+            } else if (!part.isEmpty()) {
+                sb.append(Pattern.quote(part));
+            }
+        }
+        return Pattern.compile(sb.toString());
+    }
+
+    public void start() {
+        logger.debug("JDBC::JdbcRetention: start patterns={} days={}", patterns, days);
+        worker.start();
+    }
+
+    /**
+     * Stops the worker after a running table has been processed. The worker is not interrupted, as some embedded
+     * databases close their files when a thread is interrupted during I/O.
+     */
+    public void stop() {
+        running = false;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * @return retention of an item in days, -1 if its values are kept
+     */
+    public int getRetentionDays(String itemName) {
+        for (int i = 0; i < patterns.size(); i++) {
+            if (patterns.get(i).matcher(itemName).matches()) {
+                return days.get(i);
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            long timerStart = System.currentTimeMillis();
+            int cnt = 0;
+            for (Item item : items.get()) {
+                if (!running) {
+                    break;
+                }
+                if (mapper.applyRetention(item, getRetentionDays(item.getName()))) {
+                    cnt++;
+                }
+            }
+            logger.debug("JDBC::JdbcRetention: processed {} item tables in {} ms", cnt,
+                    System.currentTimeMillis() - timerStart);
+            synchronized (lock) {
+                try {
+                    if (running) {
+                        lock.wait(RUN_INTERVAL);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    running = false;
+                }
+            }
+        }
+    }
+}
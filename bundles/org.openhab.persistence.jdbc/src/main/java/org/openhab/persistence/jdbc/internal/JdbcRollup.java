@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.internal;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openhab.core.items.Item;
+import org.openhab.persistence.jdbc.model.RollupInterval;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rollup of numeric item values. A dedicated thread runs at start and then once per finest rollup interval, at
+ * most every minute: it aggregates the values of each numeric item table which were stored since the last run
+ * into its rollup tables, e.g. number_item_0001_5m and number_item_0001_1h.
+ *
+ * The high-water mark of a rollup table is the end of the buckets rolled up so far. Each run only reads the values
+ * from there on, so every bucket is rolled up once. After a restart it is taken from the newest bucket of the table.
+ * Values stored below it later on, e.g. replayed from the spool or imported, lower it again on the next run, so
+ * that their buckets are rolled up anew. The high-water mark only advances once a run has been written.
+ *
+ * @author agent - Initial contribution
+ */
+public class JdbcRollup implements Runnable {
+    private final Logger logger = LoggerFactory.getLogger(JdbcRollup.class);
+
+    private final JdbcMapper mapper;
+    private final Supplier<Collection<Item>> items;
+    private final long runInterval;
+    // high-water mark per item table and rollup interval
+    private final Map<String, Date> highWaterMarks = new ConcurrentHashMap<>();
+    // time of the oldest value per item table stored since the last run which may be below its high-water marks
+    private final Map<String, Date> lateValues = new ConcurrentHashMap<>();
+    private final Thread worker;
+    private final Object lock = new Object();
+    private volatile boolean running = true;
+
+    public JdbcRollup(JdbcMapper mapper, JdbcConfiguration conf, Supplier<Collection<Item>> items) {
+        this.mapper = mapper;
+        this.items = items;
+        this.runInterval = Math.max(TimeUnit.MINUTES.toMillis(1),
+                TimeUnit.SECONDS.toMillis(conf.getRollups().get(0).getSeconds()));
+        this.worker = new Thread(this, "OH-jdbc-rollup");
+        this.worker.setDaemon(true);
+    }
+
+    public void start() {
+        logger.debug("JDBC::JdbcRollup: start runInterval={} ms", runInterval);
+        worker.start();
+    }
+
+    /**
+     * Stops the worker after a running table has been processed, see {@link JdbcRetention#stop()}.
+     */
+    public void stop() {
+        running = false;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * @return end of the rolled up buckets of an item table, null if the table has not been rolled up yet
+     */
+    public Date getHighWaterMark(String table, RollupInterval r) {
+        return highWaterMarks.get(table + '|' + r.getSuffix());
+    }
+
+    public void setHighWaterMark(String table, RollupInterval r, Date highWaterMark) {
+        highWaterMarks.put(table + '|' + r.getSuffix(), highWaterMark);
+    }
+
+    /**
+     * Records that values of an item table were stored which may be older than its high-water marks.
+     */
+    public void addLateValue(String table, Date time) {
+        lateValues.merge(table, time, (a, b) -> a.before(b) ? a : b);
+    }
+
+    /**
+     * @return time of the oldest value recorded by {@link #addLateValue(String, Date)} since the last call, null if
+     *         there is none
+     */
+    public Date takeLateValue(String table) {
+        return lateValues.remove(table);
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            long timerStart = System.currentTimeMillis();
+            int cnt = 0;
+            for (Item item : items.get()) {
+                if (!running) {
+                    break;
+                }
+                if (mapper.rollupItem(item, this)) {
+                    cnt++;
+                }
+            }
+            logger.debug("JDBC::JdbcRollup: processed {} item tables in {} ms", cnt,
+                    System.currentTimeMillis() - timerStart);
+            synchronized (lock) {
+                try {
+                    if (running) {
+                        lock.wait(runInterval);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    running = false;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,489 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.internal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.openhab.core.items.Item;
+import org.openhab.core.types.State;
+import org.openhab.core.types.TypeParser;
+import org.openhab.persistence.jdbc.model.ItemVO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write-ahead spool of item values which could not be written because the database was unreachable.
+ *
+ * Values are appended to memory-mapped segment files of SEGMENT_SIZE bytes in the spool directory, so they survive
+ * a restart of openHAB. A dedicated thread pings the database every REPLAY_INTERVAL milliseconds while values are
+ * spooled and replays them in batches, in the order they were stored, once the ping succeeds. Replayed segments are
+ * deleted. If the spool has reached its maximum size, new values are dropped.
+ *
+ * Segment layout: a magic number, the offset of the first record not replayed yet, then the records. A record is
+ * its length followed by the time, the item name and the state of the value. A length of 0 marks the end.
+ *
+ * @author agent - Initial contribution
+ */
+public class JdbcSpool implements Runnable {
+    private final Logger logger = LoggerFactory.getLogger(JdbcSpool.class);
+
+    private static final int SEGMENT_SIZE = 1 << 20;
+    private static final int MAGIC = 0x4f48534c;
+    private static final int READ_POS = 4;
+    private static final int HEADER_SIZE = 8;
+    private static final int REPLAY_BATCH_SIZE = 1000;
+    private static final long REPLAY_INTERVAL = 10000;
+
+    private final JdbcMapper mapper;
+    private final Function<String, Item> items;
+    private final Path dir;
+    private final int maxSegments;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private long nextSegment = 0;
+    private long pendingCnt = 0;
+    private final AtomicLong spooledCnt = new AtomicLong();
+    private final AtomicLong replayedCnt = new AtomicLong();
+    private final AtomicLong droppedCnt = new AtomicLong();
+    private final Thread worker;
+    private final Object lock = new Object();
+    private volatile boolean running = true;
+
+    public JdbcSpool(JdbcMapper mapper, JdbcConfiguration conf, Function<String, Item> items) {
+        this.mapper = mapper;
+        this.items = items;
+        this.dir = conf.getSpoolDir();
+        this.maxSegments = Math.max(1, (int) (conf.getSpoolSize() * 1024L * 1024L / SEGMENT_SIZE));
+        this.worker = new Thread(this, "OH-jdbc-spool");
+        this.worker.setDaemon(true);
+    }
+
+    /**
+     * Opens the segments left by a previous run and starts the replay thread.
+     */
+    public void start() throws IOException {
+        Files.createDirectories(dir);
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.list(dir)) {
+            paths.filter(p -> p.getFileName().toString().matches("spool-\\d+\\.dat")).sorted().forEach(files::add);
+        }
+        synchronized (this) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                nextSegment = Math.max(nextSegment, Long.parseLong(name.substring(6, name.length() - 4)) + 1);
+                Segment s = Segment.open(file);
+                if (s == null) {
+                    logger.warn("JDBC::JdbcSpool: ignoring '{}', it is not a spool segment", file);
+                } else if (s.records == 0) {
+                    s.delete();
+                } else {
+                    segments.add(s);
+                    pendingCnt += s.records;
+                }
+            }
+        }
+        logger.info("JDBC::JdbcSpool: spooling to '{}', max {} MB, {} values to replay", dir,
+                maxSegments * (SEGMENT_SIZE >> 20), pendingCnt);
+        worker.start();
+    }
+
+    /**
+     * Stops the replay thread after a running batch. Spooled values stay on disk for the next start.
+     */
+    public void stop() {
+        running = false;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+        try {
+            worker.join(REPLAY_INTERVAL);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            for (Segment s : segments) {
+                s.close();
+            }
+            segments.clear();
+        }
+    }
+
+    /**
+     * Appends a value of an item.
+     *
+     * @return false if the value was dropped because the spool is full
+     */
+    public boolean append(String itemName, State state, long time) {
+        if (!append(itemName, state.toFullString(), time)) {
+            return false;
+        }
+        // replayed by the next run of the worker, not woken up here so an unreachable database is not flooded
+        spooledCnt.incrementAndGet();
+        return true;
+    }
+
+    private synchronized boolean append(String itemName, String state, long time) {
+        byte[] name = itemName.getBytes(StandardCharsets.UTF_8);
+        byte[] value = state.getBytes(StandardCharsets.UTF_8);
+        int length = 8 + 2 + name.length + value.length;
+        Segment s = segments.peekLast();
+        try {
+            if (s == null || !s.hasRoom(length)) {
+                s = HEADER_SIZE + 4 + length > SEGMENT_SIZE || segments.size() >= maxSegments ? null : newSegment();
+            }
+        } catch (IOException e) {
+            logger.error("JDBC::JdbcSpool: creating a spool segment in '{}' failed: {}", dir, e.getMessage());
+            s = null;
+        }
+        if (s == null) {
+            if (droppedCnt.incrementAndGet() % 1000 == 1) {
+                logger.warn("JDBC::JdbcSpool: spool is full, value of item '{}' dropped. Dropped so far: {}",
+                        itemName, droppedCnt.get());
+            }
+            return false;
+        }
+        s.append(length, time, name, value);
+        pendingCnt++;
+        return true;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            synchronized (lock) {
+                try {
+                    lock.wait(REPLAY_INTERVAL);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    running = false;
+                }
+            }
+            try {
+                if (running && getPendingCount() > 0 && mapper.pingDB()) {
+                    replay();
+                }
+            } catch (RuntimeException e) {
+                // values of the batch not committed yet are replayed again by the next run
+                logger.error("JDBC::JdbcSpool: replaying spooled values failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void replay() {
+        long timerStart = System.currentTimeMillis();
+        long cnt = 0;
+        while (running) {
+            List<Record> batch = new ArrayList<>(REPLAY_BATCH_SIZE);
+            Segment s;
+            synchronized (this) {
+                s = segments.peekFirst();
+                if (s == null) {
+                    break;
+                }
+                s.read(batch, REPLAY_BATCH_SIZE);
+                if (batch.isEmpty()) {
+                    if (s == segments.peekLast()) {
+                        break;
+                    }
+                    // all values of an older segment have been replayed
+                    segments.removeFirst();
+                    s.delete();
+                    continue;
+                }
+            }
+            List<Record> failed = new ArrayList<>();
+            int written = write(batch, failed);
+            replayedCnt.addAndGet(written);
+            cnt += written;
+            boolean reachable = failed.isEmpty() || mapper.pingDB();
+            if (reachable && !failed.isEmpty()) {
+                // the database is reachable but refuses the values, do not retry them forever
+                droppedCnt.addAndGet(failed.size());
+                logger.error("JDBC::JdbcSpool: {} spooled values could not be written and are dropped", failed.size());
+            }
+            synchronized (this) {
+                s.commit(batch);
+                pendingCnt -= batch.size();
+                if (s.isReplayed() && s == segments.peekLast()) {
+                    // start over with a new segment instead of growing a drained one
+                    segments.removeLast();
+                    s.delete();
+                }
+                if (!reachable) {
+                    // only the values of the failed tables are kept, the others have been written
+                    for (Record r : failed) {
+                        append(r.itemName, r.state, r.time);
+                    }
+                }
+            }
+            if (!reachable) {
+                logger.info("JDBC::JdbcSpool: database unreachable again, {} values left to replay",
+                        getPendingCount());
+                break;
+            }
+        }
+        logger.info("JDBC::JdbcSpool: replayed {} values in {} ms, {} left", cnt,
+                System.currentTimeMillis() - timerStart, getPendingCount());
+    }
+
+    /**
+     * Writes a batch grouped by item table, values of unknown items or with invalid states are dropped.
+     *
+     * @param failed receives the records of the tables which could not be written
+     * @return number of written values
+     */
+    private int write(List<Record> batch, List<Record> failed) {
+        Map<String, List<Record>> tables = new LinkedHashMap<>();
+        Map<String, List<ItemVO>> values = new HashMap<>();
+        for (Record r : batch) {
+            try {
+                Item item = items.apply(r.itemName);
+                State state = item != null ? TypeParser.parseState(item.getAcceptedDataTypes(), r.state) : null;
+                if (state == null) {
+                    logger.warn("JDBC::JdbcSpool: dropping value '{}' of item '{}', the item does not accept it",
+                            r.state, r.itemName);
+                    droppedCnt.incrementAndGet();
+                    continue;
+                }
+                String table = mapper.getTable(item);
+                if (table == null) {
+                    failed.add(r);
+                    continue;
+                }
+                ItemVO vo = mapper.conf.getDBDAO().doPrepareItemValue(item, state, new Date(r.time),
+                        new ItemVO(table, null));
+                values.computeIfAbsent(table, k -> new ArrayList<>()).add(vo);
+                tables.computeIfAbsent(table, k -> new ArrayList<>()).add(r);
+            } catch (RuntimeException e) {
+                logger.warn("JDBC::JdbcSpool: preparing value '{}' of item '{}' failed: {}", r.state, r.itemName,
+                        e.getMessage());
+                failed.add(r);
+            }
+        }
+        int cnt = 0;
+        for (Map.Entry<String, List<Record>> e : tables.entrySet()) {
+            List<ItemVO> vol = values.get(e.getKey());
+            boolean written;
+            try {
+                written = mapper.storeItemValues(e.getKey(), vol);
+            } catch (RuntimeException ex) {
+                logger.error("JDBC::JdbcSpool: writing {} values to table '{}' failed: {}", vol.size(), e.getKey(),
+                        ex.getMessage());
+                written = false;
+            }
+            if (written) {
+                cnt += vol.size();
+            } else {
+                failed.addAll(e.getValue());
+            }
+        }
+        return cnt;
+    }
+
+    private Segment newSegment() throws IOException {
+        Segment s = Segment.create(dir.resolve(String.format("spool-%012d.dat", nextSegment++)));
+        segments.add(s);
+        return s;
+    }
+
+    public synchronized long getPendingCount() {
+        return pendingCnt;
+    }
+
+    /**
+     * @return bytes of the segment files on disk
+     */
+    public synchronized long getSize() {
+        return (long) segments.size() * SEGMENT_SIZE;
+    }
+
+    public long getSpooledCount() {
+        return spooledCnt.get();
+    }
+
+    public long getReplayedCount() {
+        return replayedCnt.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCnt.get();
+    }
+
+    private static class Record {
+        private final long time;
+        private final String itemName;
+        private final String state;
+        private final int end;
+
+        private Record(long time, String itemName, String state, int end) {
+            this.time = time;
+            this.itemName = itemName;
+            this.state = state;
+            this.end = end;
+        }
+    }
+
+    /**
+     * A memory-mapped segment file, guarded by the spool.
+     */
+    private static class Segment {
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int readPos;
+        private int writePos;
+        private int records;
+
+        private Segment(Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        static Segment create(Path file) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            Segment s = new Segment(file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE));
+            s.buffer.putInt(0, MAGIC);
+            s.buffer.putInt(READ_POS, HEADER_SIZE);
+            s.readPos = HEADER_SIZE;
+            s.writePos = HEADER_SIZE;
+            return s;
+        }
+
+        /**
+         * Opens an existing segment and counts its records not replayed yet.
+         *
+         * @return null if the file is not a segment
+         */
+        static Segment open(Path file) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (channel.size() != SEGMENT_SIZE) {
+                channel.close();
+                return null;
+            }
+            Segment s = new Segment(file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE));
+            int readPos = s.buffer.getInt(READ_POS);
+            if (s.buffer.getInt(0) != MAGIC || readPos < HEADER_SIZE || readPos > SEGMENT_SIZE) {
+                channel.close();
+                return null;
+            }
+            s.readPos = readPos;
+            int pos = readPos;
+            // a record cut off by a crash ends the segment
+            while (pos + 4 <= SEGMENT_SIZE) {
+                int length = s.buffer.getInt(pos);
+                if (length <= 0 || pos + 4 + length > SEGMENT_SIZE) {
+                    break;
+                }
+                pos += 4 + length;
+                s.records++;
+            }
+            s.writePos = pos;
+            return s;
+        }
+
+        boolean hasRoom(int length) {
+            return writePos + 4 + length <= SEGMENT_SIZE;
+        }
+
+        void append(int length, long time, byte[] name, byte[] value) {
+            int pos = writePos + 4;
+            buffer.putLong(pos, time);
+            buffer.putShort(pos + 8, (short) name.length);
+            for (int i = 0; i < name.length; i++) {
+                buffer.put(pos + 10 + i, name[i]);
+            }
+            pos += 10 + name.length;
+            for (int i = 0; i < value.length; i++) {
+                buffer.put(pos + i, value[i]);
+            }
+            // the length is written last, a record is only visible once it is complete
+            buffer.putInt(writePos, length);
+            writePos += 4 + length;
+            records++;
+        }
+
+        /**
+         * Reads up to max records from the read position on, without consuming them.
+         */
+        void read(List<Record> batch, int max) {
+            int pos = readPos;
+            while (pos < writePos && batch.size() < max) {
+                int length = buffer.getInt(pos);
+                long time = buffer.getLong(pos + 4);
+                int nameLength = buffer.getShort(pos + 12) & 0xffff;
+                String name = string(pos + 14, nameLength);
+                String state = string(pos + 14 + nameLength, length - 10 - nameLength);
+                pos += 4 + length;
+                batch.add(new Record(time, name, state, pos));
+            }
+        }
+
+        /**
+         * Consumes the records of a batch read by {@link #read(List, int)}.
+         */
+        void commit(List<Record> batch) {
+            readPos = batch.get(batch.size() - 1).end;
+            records -= batch.size();
+            buffer.putInt(READ_POS, readPos);
+        }
+
+        boolean isReplayed() {
+            return readPos == writePos;
+        }
+
+        private String string(int pos, int length) {
+            byte[] b = new byte[length];
+            for (int i = 0; i < length; i++) {
+                b[i] = buffer.get(pos + i);
+            }
+            return new String(b, StandardCharsets.UTF_8);
+        }
+
+        void close() {
+            buffer.force();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // the mapping stays valid until it is garbage collected
+            }
+        }
+
+        void delete() {
+            try {
+                channel.close();
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                LoggerFactory.getLogger(JdbcSpool.class).warn("JDBC::JdbcSpool: deleting '{}' failed: {}", file,
+                        e.getMessage());
+            }
+        }
+    }
+}
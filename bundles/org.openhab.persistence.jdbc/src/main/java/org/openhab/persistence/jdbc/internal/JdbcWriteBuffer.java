@@ -0,0 +1,207 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.internal;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openhab.persistence.jdbc.model.ItemVO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded write buffer. Prepared item values are queued by the caller and written by a dedicated writer thread,
+ * grouped by item table, as JDBC batches of at most batchSize values or after batchFlushInterval milliseconds.
+ *
+ * If the queue is full, new values are either dropped (default) or the caller blocks until there is room again,
+ * depending on the configured overflow policy. The values of a batch which could not be written are handed to the
+ * spool, if it is enabled, and dropped otherwise.
+ *
+ * The time column is the primary key of an item table, so of several values queued for the same table within the
+ * same millisecond only the last one is written.
+ *
+ * @author agent - Initial contribution
+ */
+public class JdbcWriteBuffer implements Runnable {
+    private final Logger logger = LoggerFactory.getLogger(JdbcWriteBuffer.class);
+
+    private final JdbcMapper mapper;
+    private final BlockingQueue<ItemVO> queue;
+    private final int batchSize;
+    private final long flushInterval;
+    private final boolean blockOnOverflow;
+    private final Thread writer;
+    private volatile boolean running = true;
+    // offers in progress, stop() waits for them so that no value is queued after the last drain
+    private final AtomicInteger offering = new AtomicInteger();
+
+    private final AtomicLong droppedCnt = new AtomicLong();
+    private final AtomicLong writtenCnt = new AtomicLong();
+
+    public JdbcWriteBuffer(JdbcMapper mapper, JdbcConfiguration conf) {
+        this.mapper = mapper;
+        this.queue = new ArrayBlockingQueue<>(conf.getBatchQueueCapacity());
+        this.batchSize = conf.getBatchSize();
+        this.flushInterval = conf.getBatchFlushInterval();
+        this.blockOnOverflow = conf.getBatchBlockOnOverflow();
+        this.writer = new Thread(this, "OH-jdbc-writer");
+        this.writer.setDaemon(true);
+    }
+
+    public void start() {
+        logger.debug("JDBC::JdbcWriteBuffer: start batchSize={} flushInterval={} ms capacity={} blockOnOverflow={}",
+                batchSize, flushInterval, queue.remainingCapacity(), blockOnOverflow);
+        writer.start();
+    }
+
+    /**
+     * Stops the writer thread and writes all values still queued, including those of offers which were in progress.
+     * The writer is not interrupted, as some embedded databases close their files when a thread is interrupted
+     * during I/O.
+     */
+    public void stop() {
+        running = false;
+        try {
+            writer.join(flushInterval + 5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<ItemVO> batch = new ArrayList<>();
+        do {
+            // draining also makes room for offers blocked on a full queue
+            queue.drainTo(batch);
+            flush(batch);
+            batch.clear();
+            Thread.yield();
+        } while (offering.get() > 0 || !queue.isEmpty());
+        logger.debug("JDBC::JdbcWriteBuffer: stopped, written={} dropped={}", writtenCnt.get(), droppedCnt.get());
+    }
+
+    /**
+     * Queues a prepared value.
+     *
+     * @return false if the value was not queued, because the buffer is full or stopped, see {@link #isRunning()}
+     */
+    public boolean offer(ItemVO vo) {
+        offering.incrementAndGet();
+        try {
+            if (!running) {
+                return false;
+            }
+            if (queue.offer(vo)) {
+                return true;
+            }
+            if (blockOnOverflow) {
+                try {
+                    queue.put(vo);
+                    return true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        } finally {
+            offering.decrementAndGet();
+        }
+        if (droppedCnt.incrementAndGet() % 1000 == 1) {
+            logger.warn("JDBC::JdbcWriteBuffer: write buffer is full, value for table '{}' dropped. Dropped so far: {}",
+                    vo.getTableName(), droppedCnt.get());
+        }
+        return false;
+    }
+
+    @Override
+    public void run() {
+        List<ItemVO> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                ItemVO first = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.currentTimeMillis() + flushInterval;
+                queue.drainTo(batch, batchSize - batch.size());
+                while (batch.size() < batchSize) {
+                    long wait = deadline - System.currentTimeMillis();
+                    ItemVO vo = wait > 0 ? queue.poll(wait, TimeUnit.MILLISECONDS) : null;
+                    if (vo == null) {
+                        break;
+                    }
+                    batch.add(vo);
+                    queue.drainTo(batch, batchSize - batch.size());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    private void flush(List<ItemVO> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        // group by table, a second value for the same table and time would violate the primary key
+        Map<String, Map<Long, ItemVO>> tables = new LinkedHashMap<>();
+        for (ItemVO vo : batch) {
+            tables.computeIfAbsent(vo.getTableName(), k -> new LinkedHashMap<>()).put(vo.getTime().getTime(), vo);
+        }
+        for (Map.Entry<String, Map<Long, ItemVO>> e : tables.entrySet()) {
+            List<ItemVO> vol = new ArrayList<>(e.getValue().values());
+            try {
+                if (mapper.storeItemValues(e.getKey(), vol)) {
+                    writtenCnt.addAndGet(vol.size());
+                } else {
+                    spool(e.getKey(), vol, "see above");
+                }
+            } catch (RuntimeException ex) {
+                spool(e.getKey(), vol, ex.getMessage());
+            }
+        }
+    }
+
+    private void spool(String tableName, List<ItemVO> vol, String error) {
+        int lost = mapper.spoolItemValues(vol);
+        droppedCnt.addAndGet(lost);
+        logger.error("JDBC::JdbcWriteBuffer: writing {} values to table '{}' failed, {} spooled, {} dropped: {}",
+                vol.size(), tableName, vol.size() - lost, lost, error);
+    }
+
+    /**
+     * @return false once the buffer is stopping, values offered then have to be written directly
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public long getWrittenCount() {
+        return writtenCnt.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCnt.get();
+    }
+}
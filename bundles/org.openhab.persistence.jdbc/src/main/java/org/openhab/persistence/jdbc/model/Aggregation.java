@@ -0,0 +1,32 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.model;
+
+/**
+ * Aggregation applied per time bucket by aggregated history queries.
+ *
+ * AVG, MIN and MAX are computed by the database and only apply to numeric item tables,
+ * LAST returns the newest stored value of each bucket and applies to all item tables.
+ *
+ * @author agent - Initial contribution
+ */
+public enum Aggregation {
+    AVG,
+    MIN,
+    MAX,
+    LAST;
+
+    public boolean isNumeric() {
+        return this != LAST;
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.model;
+
+/**
+ * Represents the pre-rendered SQL and the resolved value types of one item table.
+ * Built once per table and reused for every value stored to it.
+ *
+ * @author agent - Initial contribution
+ */
+public class ItemTableVO {
+
+    private final String tableName;
+    private final String itemType;
+    private final String dbType;
+    private final JdbcValueCodec codec;
+    private final String sqlInsertItemValue;
+    private final String sqlInsertItemValues;
+    private final int valueParamCount;
+
+    public ItemTableVO(String tableName, String itemType, String dbType, JdbcValueCodec codec,
+            String sqlInsertItemValue, String sqlInsertItemValues) {
+        this.tableName = tableName;
+        this.itemType = itemType;
+        this.dbType = dbType;
+        this.codec = codec;
+        this.sqlInsertItemValue = sqlInsertItemValue;
+        this.sqlInsertItemValues = sqlInsertItemValues;
+        int cnt = 0;
+        for (int i = 0; i < sqlInsertItemValue.length(); i++) {
+            if (sqlInsertItemValue.charAt(i) == '?') {
+                cnt++;
+            }
+        }
+        this.valueParamCount = cnt;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public String getItemType() {
+        return itemType;
+    }
+
+    public String getDbType() {
+        return dbType;
+    }
+
+    public Class<?> getJavaType() {
+        return codec.getJavaType();
+    }
+
+    /**
+     * @return conversion of the states of the item type to and from the value column
+     */
+    public JdbcValueCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * @return insert statement using the database time ("tablePrimaryValue") for the time column
+     */
+    public String getSqlInsertItemValue() {
+        return sqlInsertItemValue;
+    }
+
+    /**
+     * @return insert statement binding the time column as first parameter, used for batches
+     */
+    public String getSqlInsertItemValues() {
+        return sqlInsertItemValues;
+    }
+
+    /**
+     * @return how often the value is bound in {@link #getSqlInsertItemValue()}
+     */
+    public int getValueParamCount() {
+        return valueParamCount;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("ItemTableVO [tableName=");
+        builder.append(tableName);
+        builder.append(", itemType=");
+        builder.append(itemType);
+        builder.append(", dbType=");
+        builder.append(dbType);
+        builder.append(", codec=");
+        builder.append(codec);
+        builder.append(", sqlInsertItemValue=");
+        builder.append(sqlInsertItemValue);
+        builder.append("]");
+        return builder.toString();
+    }
+}
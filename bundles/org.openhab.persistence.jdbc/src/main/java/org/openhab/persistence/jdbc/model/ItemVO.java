@@ -15,6 +15,8 @@ package org.openhab.persistence.jdbc.model;
 import java.io.Serializable;
 import java.util.Date;
 
+import org.openhab.core.items.Item;
+import org.openhab.core.types.State;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,7 +26,7 @@ import org.slf4j.LoggerFactory;
  * @author Helmut Lehmeyer - Initial contribution
  */
 public class ItemVO implements Serializable {
-    private final Logger logger = LoggerFactory.getLogger(ItemVO.class);
+    private static final Logger LOGGER = LoggerFactory.getLogger(ItemVO.class);
 
     private static final long serialVersionUID = 1871441039821454890L;
 
@@ -36,9 +38,12 @@ public class ItemVO implements Serializable {
     private Class<?> javaType;
     private Date time;
     private Object value;
+    // item and state of a prepared value, not part of the stored row
+    private transient Item item;
+    private transient State state;
 
     public ItemVO(String tableName, String newTableName) {
-        logger.debug("JDBC:ItemVO tableName={}; newTableName={}; ", tableName, newTableName);
+        LOGGER.debug("JDBC:ItemVO tableName={}; newTableName={}; ", tableName, newTableName);
         this.tableName = tableName;
         this.newTableName = newTableName;
     }
@@ -47,7 +52,7 @@ public class ItemVO implements Serializable {
     }
 
     public void setValueTypes(String dbType, Class<?> javaType) {
-        logger.debug("JDBC:ItemVO setValueTypes dbType={}; javaType={};", dbType, javaType);
+        LOGGER.debug("JDBC:ItemVO setValueTypes dbType={}; javaType={};", dbType, javaType);
         this.dbType = dbType;
         this.javaType = javaType;
     }
@@ -116,6 +121,22 @@ public class ItemVO implements Serializable {
         this.value = value;
     }
 
+    public Item getItem() {
+        return item;
+    }
+
+    public void setItem(Item item) {
+        this.item = item;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public void setState(State state) {
+        this.state = state;
+    }
+
     /**
      * (non-Javadoc)
      *
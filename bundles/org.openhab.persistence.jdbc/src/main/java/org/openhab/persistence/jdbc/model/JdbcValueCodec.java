@@ -0,0 +1,273 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.model;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import org.openhab.core.library.types.DateTimeType;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.HSBType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.OpenClosedType;
+import org.openhab.core.library.types.PercentType;
+import org.openhab.core.library.types.QuantityType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.types.State;
+import org.openhab.core.types.UnDefType;
+
+/**
+ * Converts the states of an item type from and to the value column of its item tables.
+ *
+ * The codec is chosen once per item type and SQL type, so storing a value binds it with the primitive setter of the
+ * column (setDouble, setInt, setTimestamp, ...) and reading a row uses the matching primitive getter, without the
+ * type checks and intermediate String or BigDecimal objects of a generic conversion.
+ *
+ * @author agent - Initial contribution
+ */
+public enum JdbcValueCodec {
+    /** NUMBERITEM stored as DOUBLE, DOUBLE PRECISION, FLOAT or REAL */
+    NUMBER_DOUBLE(Double.class) {
+        @Override
+        public Object toValue(State state) {
+            return ((Number) state).doubleValue();
+        }
+
+        @Override
+        public void bind(PreparedStatement ps, int index, State state) throws SQLException {
+            ps.setDouble(index, ((Number) state).doubleValue());
+        }
+
+        @Override
+        public State toState(Object v) {
+            return v instanceof Number ? new DecimalType(((Number) v).doubleValue()) : DecimalType.valueOf(str(v));
+        }
+
+        @Override
+        public State read(ResultSet rs, int index) throws SQLException {
+            double d = rs.getDouble(index);
+            return rs.wasNull() ? UnDefType.NULL : new DecimalType(d);
+        }
+    },
+    /** NUMBERITEM stored as DECIMAL or NUMERIC */
+    NUMBER_DECIMAL(BigDecimal.class) {
+        @Override
+        public Object toValue(State state) {
+            return state instanceof QuantityType ? ((QuantityType<?>) state).toBigDecimal()
+                    : ((DecimalType) state).toBigDecimal();
+        }
+
+        @Override
+        public void bind(PreparedStatement ps, int index, State state) throws SQLException {
+            ps.setBigDecimal(index, (BigDecimal) toValue(state));
+        }
+
+        @Override
+        public State toState(Object v) {
+            if (v instanceof BigDecimal) {
+                return new DecimalType((BigDecimal) v);
+            }
+            return v instanceof Number ? new DecimalType(((Number) v).doubleValue()) : DecimalType.valueOf(str(v));
+        }
+
+        @Override
+        public State read(ResultSet rs, int index) throws SQLException {
+            BigDecimal d = rs.getBigDecimal(index);
+            return d == null ? UnDefType.NULL : new DecimalType(d);
+        }
+    },
+    /** NUMBERITEM stored as one of the INT types */
+    NUMBER_INTEGER(Integer.class) {
+        @Override
+        public Object toValue(State state) {
+            return ((Number) state).intValue();
+        }
+
+        @Override
+        public void bind(PreparedStatement ps, int index, State state) throws SQLException {
+            ps.setInt(index, ((Number) state).intValue());
+        }
+
+        @Override
+        public State toState(Object v) {
+            return v instanceof Number ? new DecimalType(((Number) v).longValue()) : DecimalType.valueOf(str(v));
+        }
+
+        @Override
+        public State read(ResultSet rs, int index) throws SQLException {
+            long l = rs.getLong(index);
+            return rs.wasNull() ? UnDefType.NULL : new DecimalType(l);
+        }
+    },
+    /** NUMBERITEM stored in a column of a non numeric SQL type */
+    NUMBER_STRING(String.class) {
+        @Override
+        public State toState(Object v) {
+            return DecimalType.valueOf(str(v));
+        }
+    },
+    /** DIMMERITEM and ROLLERSHUTTERITEM */
+    PERCENT(Integer.class) {
+        @Override
+        public Object toValue(State state) {
+            return ((Number) state).intValue();
+        }
+
+        @Override
+        public void bind(PreparedStatement ps, int index, State state) throws SQLException {
+            ps.setInt(index, ((Number) state).intValue());
+        }
+
+        @Override
+        public State toState(Object v) {
+            return new PercentType(((Number) v).intValue());
+        }
+
+        @Override
+        public State read(ResultSet rs, int index) throws SQLException {
+            int i = rs.getInt(index);
+            return rs.wasNull() ? UnDefType.NULL : new PercentType(i);
+        }
+    },
+    DATETIME(Timestamp.class) {
+        @Override
+        public Object toValue(State state) {
+            return new Timestamp(((DateTimeType) state).getZonedDateTime().toInstant().toEpochMilli());
+        }
+
+        @Override
+        public void bind(PreparedStatement ps, int index, State state) throws SQLException {
+            ps.setTimestamp(index, (Timestamp) toValue(state));
+        }
+
+        @Override
+        public State toState(Object v) {
+            long millis = v instanceof Number ? ((Number) v).longValue() : ((java.util.Date) v).getTime();
+            return new DateTimeType(ZonedDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault()));
+        }
+
+        @Override
+        public State read(ResultSet rs, int index) throws SQLException {
+            // the SQL type of the column differs between the databases, e.g. SQLite
+            Object v = rs.getObject(index);
+            return v == null ? UnDefType.NULL : toState(v);
+        }
+    },
+    SWITCH(String.class) {
+        @Override
+        public State toState(Object v) {
+            return OnOffType.valueOf(str(v).trim());
+        }
+    },
+    CONTACT(String.class) {
+        @Override
+        public State toState(Object v) {
+            return OpenClosedType.valueOf(str(v).trim());
+        }
+    },
+    COLOR(String.class) {
+        @Override
+        public State toState(Object v) {
+            return HSBType.valueOf(str(v));
+        }
+    },
+    /** all other item types, Call, Image, Location, Player and String */
+    STRING(String.class) {
+        @Override
+        public State toState(Object v) {
+            return StringType.valueOf(str(v));
+        }
+    };
+
+    private final Class<?> javaType;
+
+    JdbcValueCodec(Class<?> javaType) {
+        this.javaType = javaType;
+    }
+
+    /**
+     * @param itemType item type as used as key of the SQL types, e.g. NUMBERITEM
+     * @param dbType SQL type of the value column of the item type
+     */
+    public static JdbcValueCodec of(String itemType, String dbType) {
+        switch (itemType) {
+            case "NUMBERITEM":
+                String t = dbType == null ? "" : dbType.toUpperCase();
+                if (t.contains("DOUBLE") || t.contains("FLOAT") || t.contains("REAL")) {
+                    return NUMBER_DOUBLE;
+                } else if (t.contains("DECIMAL") || t.contains("NUMERIC")) {
+                    return NUMBER_DECIMAL;
+                } else if (t.contains("INT")) {
+                    return NUMBER_INTEGER;
+                }
+                return NUMBER_STRING;
+            case "DIMMERITEM":
+            case "ROLLERSHUTTERITEM":
+                return PERCENT;
+            case "DATETIMEITEM":
+                return DATETIME;
+            case "SWITCHITEM":
+                return SWITCH;
+            case "CONTACTITEM":
+                return CONTACT;
+            case "COLORITEM":
+                return COLOR;
+            default:
+                return STRING;
+        }
+    }
+
+    /**
+     * @return Java type of the values returned by {@link #toValue(State)}
+     */
+    public Class<?> getJavaType() {
+        return javaType;
+    }
+
+    /**
+     * Converts a state to the value bound to the value column, e.g. for batches.
+     */
+    public Object toValue(State state) {
+        return state.toString();
+    }
+
+    /**
+     * Binds a state to a parameter of an insert statement.
+     */
+    public void bind(PreparedStatement ps, int index, State state) throws SQLException {
+        ps.setString(index, state.toString());
+    }
+
+    /**
+     * Converts a value read by a generic query, whose Java type depends on the JDBC driver.
+     */
+    public abstract State toState(Object v);
+
+    /**
+     * Reads the value column of the current row of a result set.
+     */
+    public State read(ResultSet rs, int index) throws SQLException {
+        String s = rs.getString(index);
+        return s == null ? UnDefType.NULL : toState(s);
+    }
+
+    private static String str(Object v) {
+        return v instanceof String ? (String) v : v.toString();
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.model;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Period covered by one range partition of an item table.
+ *
+ * Partitions are named after the start of their period, yyyyMM for months and yyyyMMdd for days, so the end of
+ * a partition can be told from its name.
+ *
+ * @author agent - Initial contribution
+ */
+public enum PartitionInterval {
+    DAY,
+    MONTH;
+
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyyMM");
+
+    /**
+     * @return start of the period containing time
+     */
+    public LocalDateTime periodStart(LocalDateTime time) {
+        LocalDate date = time.toLocalDate();
+        return (this == DAY ? date : date.withDayOfMonth(1)).atStartOfDay();
+    }
+
+    /**
+     * @return start of the period following the one starting at start
+     */
+    public LocalDateTime next(LocalDateTime start) {
+        return this == DAY ? start.plusDays(1) : start.plusMonths(1);
+    }
+
+    public String format(LocalDateTime start) {
+        return (this == DAY ? DAY_FORMAT : MONTH_FORMAT).format(start);
+    }
+
+    /**
+     * @param period period of a partition name, of either interval
+     * @return end of the period, null if it is no valid period
+     */
+    public static LocalDateTime periodEnd(String period) {
+        try {
+            if (period.length() == 8) {
+                return DAY.next(LocalDate.parse(period, DAY_FORMAT).atStartOfDay());
+            } else if (period.length() == 6) {
+                return MONTH.next(YearMonth.parse(period, MONTH_FORMAT).atDay(1).atStartOfDay());
+            }
+        } catch (DateTimeParseException e) {
+            // no partition of ours
+        }
+        return null;
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.model;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Time bucket of a rollup table, which holds count, sum, minimum and maximum of the values of an item per bucket.
+ *
+ * The suffix of a rollup table is the configured interval, e.g. number_item_0001_5m for "5m".
+ *
+ * @author agent - Initial contribution
+ */
+public class RollupInterval {
+
+    private static final Pattern INTERVAL = Pattern.compile("(\\d{1,4})([mhd])");
+
+    private final String suffix;
+    private final int seconds;
+
+    private RollupInterval(String suffix, int seconds) {
+        this.suffix = suffix;
+        this.seconds = seconds;
+    }
+
+    /**
+     * @param interval minutes, hours or days, e.g. "5m", "1h" or "1d"
+     * @return the interval, null if it is no valid interval
+     */
+    public static RollupInterval parse(String interval) {
+        Matcher m = INTERVAL.matcher(interval.trim().toLowerCase());
+        if (!m.matches() || Integer.parseInt(m.group(1)) == 0) {
+            return null;
+        }
+        int unit = "m".equals(m.group(2)) ? 60 : "h".equals(m.group(2)) ? 3600 : 86400;
+        return new RollupInterval(m.group(), Integer.parseInt(m.group(1)) * unit);
+    }
+
+    public String getSuffix() {
+        return suffix;
+    }
+
+    public int getSeconds() {
+        return seconds;
+    }
+
+    @Override
+    public String toString() {
+        return suffix;
+    }
+}
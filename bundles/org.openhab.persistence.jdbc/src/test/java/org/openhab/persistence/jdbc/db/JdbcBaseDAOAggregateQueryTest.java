@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.db;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.ZonedDateTime;
+
+import org.junit.Test;
+import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.FilterCriteria.Ordering;
+import org.openhab.persistence.jdbc.model.Aggregation;
+
+/**
+ *
+ * @author agent - Initial contribution
+ *
+ */
+public class JdbcBaseDAOAggregateQueryTest {
+
+    @Test
+    public void testAvgWithTimeRange() {
+        FilterCriteria filter = new FilterCriteria();
+        filter.setBeginDate(ZonedDateTime.now().minusDays(1));
+        filter.setEndDate(ZonedDateTime.now());
+        filter.setOrdering(Ordering.ASCENDING);
+        assertEquals(
+                "SELECT MIN(time), AVG(value) FROM item0001 WHERE TIME>? AND TIME<? "
+                        + "GROUP BY FLOOR(UNIX_TIMESTAMP(time)/900) ORDER BY 1 ASC",
+                new JdbcBaseDAO().histItemAggregateQueryProvider(filter, Aggregation.AVG, 900, "item0001"));
+    }
+
+    @Test
+    public void testMaxDescendingWithoutTimeRange() {
+        FilterCriteria filter = new FilterCriteria();
+        filter.setOrdering(Ordering.DESCENDING);
+        assertEquals(
+                "SELECT MIN(time), MAX(value) FROM item0001 GROUP BY FLOOR(UNIX_TIMESTAMP(time)/3600) ORDER BY 1 DESC",
+                new JdbcBaseDAO().histItemAggregateQueryProvider(filter, Aggregation.MAX, 3600, "item0001"));
+    }
+
+    @Test
+    public void testLastJoinsNewestTimePerBucket() {
+        FilterCriteria filter = new FilterCriteria();
+        filter.setBeginDate(ZonedDateTime.now().minusDays(1));
+        filter.setOrdering(Ordering.ASCENDING);
+        assertEquals(
+                "SELECT time, value FROM item0001 INNER JOIN (SELECT MAX(time) AS lasttime FROM item0001 WHERE TIME>? "
+                        + "GROUP BY FLOOR(UNIX_TIMESTAMP(time)/60)) b ON time = b.lasttime ORDER BY time ASC",
+                new JdbcBaseDAO().histItemAggregateQueryProvider(filter, Aggregation.LAST, 60, "item0001"));
+    }
+
+    @Test
+    public void testTimeBucketOfDialect() {
+        assertEquals("FLOOR(EXTRACT(EPOCH FROM time) / 300)", new JdbcPostgresqlDAO().timeBucketProvider(300));
+        assertEquals("CAST(strftime('%s', time) AS INTEGER) / 300", new JdbcSqliteDAO().timeBucketProvider(300));
+    }
+}
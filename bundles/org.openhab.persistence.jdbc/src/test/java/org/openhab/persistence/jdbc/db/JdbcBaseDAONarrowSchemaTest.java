@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.db;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.openhab.core.library.items.NumberItem;
+
+/**
+ *
+ * @author agent - Initial contribution
+ *
+ */
+public class JdbcBaseDAONarrowSchemaTest {
+
+    private static final String INSERT = "INSERT INTO #tableName# (#itemIdKey#TIME, VALUE) VALUES( #itemIdValue#?, ? )";
+
+    @Test
+    public void testWideSchemaRemovesItemIdParts() {
+        JdbcBaseDAO dao = new JdbcBaseDAO();
+        assertEquals("INSERT INTO #tableName# (TIME, VALUE) VALUES( ?, ? )", dao.itemKeyProvider(INSERT, "item0001"));
+        assertEquals("item0001", dao.storageTableProvider("item0001", "NUMBERITEM"));
+        assertEquals("item0001", dao.tableSourceProvider("item0001", new NumberItem("Temperature")));
+    }
+
+    @Test
+    public void testNarrowSchemaRendersItemId() {
+        JdbcBaseDAO dao = narrowDAO();
+        assertEquals("INSERT INTO #tableName# (itemid, TIME, VALUE) VALUES( 7, ?, ? )",
+                dao.itemKeyProvider(INSERT, "item0001"));
+        assertEquals("DELETE FROM t WHERE itemid=7 AND time<?",
+                dao.itemKeyProvider("DELETE FROM t WHERE #itemIdWhere#time<?", "item0001"));
+    }
+
+    @Test
+    public void testNarrowSchemaStorageTablePerItemType() {
+        JdbcBaseDAO dao = narrowDAO();
+        assertEquals("history_number", dao.storageTableProvider("item0001", "NUMBERITEM"));
+        assertEquals("history_switch", dao.storageTableProvider("item0002", "SWITCHITEM"));
+        assertEquals("(SELECT time, value FROM history_number WHERE itemid=7) h",
+                dao.tableSourceProvider("item0001", new NumberItem("Temperature")));
+    }
+
+    @Test
+    public void testLastNarrowItemValuesQuery() {
+        assertEquals(
+                "SELECT h.itemid, h.time, h.value FROM history_number h WHERE h.itemid IN (1,2) "
+                        + "AND h.time=(SELECT MAX(time) FROM history_number WHERE itemid=h.itemid)",
+                narrowDAO().lastNarrowItemValuesQueryProvider("history_number", Arrays.asList(1, 2)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNarrowSchemaWithoutItemId() {
+        narrowDAO().itemKeyProvider(INSERT, "item0002");
+    }
+
+    private JdbcBaseDAO narrowDAO() {
+        JdbcBaseDAO dao = new JdbcBaseDAO();
+        dao.setNarrowSchema(true);
+        dao.putItemId("item0001", 7);
+        return dao;
+    }
+}
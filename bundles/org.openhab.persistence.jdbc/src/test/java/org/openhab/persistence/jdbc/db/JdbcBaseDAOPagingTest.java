@@ -0,0 +1,188 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.db;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Timestamp;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.FilterCriteria.Ordering;
+
+/**
+ *
+ * @author agent - Initial contribution
+ *
+ */
+public class JdbcBaseDAOPagingTest {
+
+    private static final String TABLE = "item0001";
+
+    private final NumberItem item = new NumberItem("Temperature");
+
+    @Test
+    public void testFirstPageUsesOffset() {
+        Recorder r = new Recorder();
+        query(r.base(), filter(Ordering.ASCENDING, 0));
+        assertEquals("SELECT time, value FROM item0001 ORDER BY time ASC LIMIT ?,?", r.sql);
+        assertArrayEquals(new Object[] { 0, 2 }, r.params);
+    }
+
+    @Test
+    public void testNextPageSeeksAfterPreviousPage() {
+        Recorder r = new Recorder();
+        JdbcBaseDAO dao = r.base();
+        r.rows = rows(1000, 2000);
+        query(dao, filter(Ordering.ASCENDING, 0));
+
+        query(dao, filter(Ordering.ASCENDING, 1));
+        assertEquals("SELECT time, value FROM item0001 WHERE TIME>? ORDER BY time ASC LIMIT ?,?", r.sql);
+        assertArrayEquals(new Object[] { new Timestamp(2000), 0, 2 }, r.params);
+    }
+
+    @Test
+    public void testDescendingPageSeeksBeforePreviousPage() {
+        Recorder r = new Recorder();
+        JdbcBaseDAO dao = r.base();
+        FilterCriteria first = filter(Ordering.DESCENDING, 0);
+        first.setBeginDate(ZonedDateTime.now().minusDays(1));
+        r.rows = rows(2000, 1000);
+        query(dao, first);
+
+        FilterCriteria next = filter(Ordering.DESCENDING, 1);
+        next.setBeginDate(first.getBeginDate());
+        query(dao, next);
+        assertEquals("SELECT time, value FROM item0001 WHERE TIME>? AND TIME<? ORDER BY time DESC LIMIT ?,?", r.sql);
+        assertEquals(4, r.params.length);
+        assertEquals(new Timestamp(1000), r.params[1]);
+        assertEquals(0, r.params[2]);
+        assertEquals(2, r.params[3]);
+    }
+
+    @Test
+    public void testCursorMissFallsBackToOffset() {
+        Recorder r = new Recorder();
+        JdbcBaseDAO dao = r.base();
+        // no cursor for page 1, it has not been read
+        query(dao, filter(Ordering.ASCENDING, 2));
+        assertEquals("SELECT time, value FROM item0001 ORDER BY time ASC LIMIT ?,?", r.sql);
+        assertArrayEquals(new Object[] { 4, 2 }, r.params);
+
+        // a short page is the last one, no cursor is kept for it
+        r.rows = rows(1000);
+        query(dao, filter(Ordering.ASCENDING, 0));
+        query(dao, filter(Ordering.ASCENDING, 1));
+        assertArrayEquals(new Object[] { 2, 2 }, r.params);
+    }
+
+    @Test
+    public void testDerbyParameterOrder() {
+        Recorder r = new Recorder();
+        JdbcBaseDAO dao = r.derby();
+        query(dao, filter(Ordering.ASCENDING, 3));
+        assertEquals("SELECT time, value FROM ITEM0001 ORDER BY time ASC OFFSET ? ROWS FETCH NEXT ? ROWS ONLY", r.sql);
+        assertArrayEquals(new Object[] { 6, 2 }, r.params);
+
+        r.rows = rows(1000, 2000);
+        query(dao, filter(Ordering.ASCENDING, 0));
+        query(dao, filter(Ordering.ASCENDING, 1));
+        assertEquals(
+                "SELECT time, value FROM ITEM0001 WHERE TIME>? ORDER BY time ASC OFFSET ? ROWS FETCH NEXT ? ROWS ONLY",
+                r.sql);
+        assertArrayEquals(new Object[] { new Timestamp(2000), 0, 2 }, r.params);
+    }
+
+    @Test
+    public void testPostgresqlParameterOrder() {
+        Recorder r = new Recorder();
+        JdbcBaseDAO dao = r.postgresql();
+        query(dao, filter(Ordering.ASCENDING, 3));
+        assertEquals("SELECT time, value FROM item0001 ORDER BY time ASC LIMIT ? OFFSET ?", r.sql);
+        assertArrayEquals(new Object[] { 2, 6 }, r.params);
+
+        r.rows = rows(1000, 2000);
+        query(dao, filter(Ordering.ASCENDING, 0));
+        query(dao, filter(Ordering.ASCENDING, 1));
+        assertEquals("SELECT time, value FROM item0001 WHERE TIME>? ORDER BY time ASC LIMIT ? OFFSET ?", r.sql);
+        assertArrayEquals(new Object[] { new Timestamp(2000), 2, 0 }, r.params);
+    }
+
+    private void query(JdbcBaseDAO dao, FilterCriteria filter) {
+        dao.doGetHistItemFilterQuery(item, filter, -1, TABLE, item.getName());
+    }
+
+    private static FilterCriteria filter(Ordering ordering, int pageNumber) {
+        FilterCriteria filter = new FilterCriteria();
+        filter.setItemName("Temperature");
+        filter.setOrdering(ordering);
+        filter.setPageSize(2);
+        filter.setPageNumber(pageNumber);
+        return filter;
+    }
+
+    private static List<Object[]> rows(long... times) {
+        List<Object[]> rows = new ArrayList<>();
+        for (long time : times) {
+            rows.add(new Object[] { new Timestamp(time), 21.5 });
+        }
+        return rows;
+    }
+
+    /**
+     * Records the last query of a DAO instead of running it, and answers it with the given rows.
+     */
+    private static class Recorder {
+        String sql;
+        Object[] params;
+        List<Object[]> rows = new ArrayList<>();
+
+        List<Object[]> record(String sql, Object[] params) {
+            this.sql = sql;
+            this.params = params;
+            return rows;
+        }
+
+        JdbcBaseDAO base() {
+            return new JdbcBaseDAO() {
+                @Override
+                protected List<Object[]> queryReadObjectArrays(String sql, Object[] params) {
+                    return record(sql, params);
+                }
+            };
+        }
+
+        JdbcBaseDAO derby() {
+            return new JdbcDerbyDAO() {
+                @Override
+                protected List<Object[]> queryReadObjectArrays(String sql, Object[] params) {
+                    return record(sql, params);
+                }
+            };
+        }
+
+        JdbcBaseDAO postgresql() {
+            return new JdbcPostgresqlDAO() {
+                @Override
+                protected List<Object[]> queryReadObjectArrays(String sql, Object[] params) {
+                    return record(sql, params);
+                }
+            };
+        }
+    }
+}
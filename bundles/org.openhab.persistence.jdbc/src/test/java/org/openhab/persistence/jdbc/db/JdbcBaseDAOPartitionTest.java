@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.db;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.openhab.persistence.jdbc.model.PartitionInterval;
+
+/**
+ *
+ * @author agent - Initial contribution
+ *
+ */
+public class JdbcBaseDAOPartitionTest {
+
+    @Test
+    public void testPartitioningWithWholeSeconds() {
+        JdbcBaseDAO dao = new JdbcMysqlDAO();
+        dao.setPartitionInterval(PartitionInterval.MONTH);
+        assertTrue(dao.isPartitioningEnabled());
+
+        dao.sqlTypes.put("tablePrimaryKey", "TIMESTAMP(0)");
+        assertTrue(dao.isPartitioningEnabled());
+    }
+
+    @Test
+    public void testNoPartitioningWithFractionalSeconds() {
+        JdbcBaseDAO dao = new JdbcMariadbDAO();
+        dao.setPartitionInterval(PartitionInterval.DAY);
+        // as set by initAfterFirstDbConnection on newer versions
+        dao.sqlTypes.put("tablePrimaryKey", "TIMESTAMP(3)");
+        assertFalse(dao.isPartitioningEnabled());
+    }
+
+    @Test
+    public void testNoPartitioningWithoutInterval() {
+        assertFalse(new JdbcMysqlDAO().isPartitioningEnabled());
+        JdbcBaseDAO dao = new JdbcH2DAO();
+        dao.setPartitionInterval(PartitionInterval.MONTH);
+        assertFalse(dao.isPartitioningEnabled());
+    }
+}
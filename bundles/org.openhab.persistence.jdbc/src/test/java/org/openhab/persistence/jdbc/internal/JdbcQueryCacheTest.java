@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import org.junit.Test;
+import org.openhab.core.items.Item;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.FilterCriteria.Ordering;
+import org.openhab.core.persistence.HistoricItem;
+import org.openhab.persistence.jdbc.model.ItemVO;
+import org.openhab.persistence.jdbc.model.JdbcItem;
+
+/**
+ *
+ * @author agent - Initial contribution
+ *
+ */
+public class JdbcQueryCacheTest {
+
+    private static final String TABLE = "item0001";
+    private static final BiFunction<Item, ItemVO, HistoricItem> TO_HISTORIC_ITEM = JdbcQueryCacheTest::toHistoricItem;
+
+    private final NumberItem item = new NumberItem("Temperature");
+
+    @Test
+    public void testAppendKeepsSnapshots() {
+        JdbcQueryCache cache = new JdbcQueryCache(10);
+        FilterCriteria filter = filter(Ordering.ASCENDING);
+        cache.put(filter, TABLE, item, values(1000, 2000), cache.getVersion(TABLE));
+        List<HistoricItem> before = cache.get(filter, TABLE);
+
+        cache.write(TABLE, Collections.singletonList(value(3000)), TO_HISTORIC_ITEM);
+        cache.write(TABLE, Collections.singletonList(value(4000)), TO_HISTORIC_ITEM);
+
+        List<HistoricItem> after = cache.get(filter, TABLE);
+        assertEquals(2, before.size());
+        assertEquals(4, after.size());
+        assertEquals(1000, after.get(0).getTimestamp().getTime());
+        assertEquals(4000, after.get(3).getTimestamp().getTime());
+    }
+
+    @Test
+    public void testAppendToDescendingResult() {
+        JdbcQueryCache cache = new JdbcQueryCache(10);
+        FilterCriteria filter = filter(Ordering.DESCENDING);
+        cache.put(filter, TABLE, item, values(2000, 1000), cache.getVersion(TABLE));
+
+        cache.write(TABLE, Collections.singletonList(value(3000)), TO_HISTORIC_ITEM);
+
+        List<HistoricItem> result = cache.get(filter, TABLE);
+        assertEquals(3, result.size());
+        assertEquals(3000, result.get(0).getTimestamp().getTime());
+        assertEquals(1000, result.get(2).getTimestamp().getTime());
+    }
+
+    @Test
+    public void testOlderValueDropsResult() {
+        JdbcQueryCache cache = new JdbcQueryCache(10);
+        FilterCriteria filter = filter(Ordering.ASCENDING);
+        cache.put(filter, TABLE, item, values(1000, 2000), cache.getVersion(TABLE));
+
+        cache.write(TABLE, Collections.singletonList(value(1500)), TO_HISTORIC_ITEM);
+
+        assertNull(cache.get(filter, TABLE));
+    }
+
+    @Test
+    public void testResultOfConcurrentWriteIsNotCached() {
+        JdbcQueryCache cache = new JdbcQueryCache(10);
+        FilterCriteria filter = filter(Ordering.ASCENDING);
+        long version = cache.getVersion(TABLE);
+        cache.write(TABLE, Collections.singletonList(value(3000)), TO_HISTORIC_ITEM);
+
+        cache.put(filter, TABLE, item, values(1000, 2000), version);
+
+        assertNull(cache.get(filter, TABLE));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        JdbcQueryCache cache = new JdbcQueryCache(1);
+        FilterCriteria asc = filter(Ordering.ASCENDING);
+        FilterCriteria desc = filter(Ordering.DESCENDING);
+        cache.put(asc, TABLE, item, values(1000), cache.getVersion(TABLE));
+        cache.put(desc, TABLE, item, values(1000), cache.getVersion(TABLE));
+
+        assertNull(cache.get(asc, TABLE));
+        assertEquals(1, cache.get(desc, TABLE).size());
+        assertEquals(1, cache.size());
+    }
+
+    private FilterCriteria filter(Ordering ordering) {
+        FilterCriteria filter = new FilterCriteria();
+        filter.setItemName(item.getName());
+        filter.setOrdering(ordering);
+        return filter;
+    }
+
+    private List<HistoricItem> values(long... times) {
+        List<HistoricItem> values = new ArrayList<>();
+        for (long time : times) {
+            values.add(new JdbcItem(item.getName(), new DecimalType(time), new Date(time)));
+        }
+        return values;
+    }
+
+    private static HistoricItem toHistoricItem(Item item, ItemVO vo) {
+        return new JdbcItem(item.getName(), new DecimalType((Double) vo.getValue()), vo.getTime());
+    }
+
+    private ItemVO value(long time) {
+        ItemVO vo = new ItemVO(TABLE, null);
+        vo.setValue((double) time);
+        vo.setTime(new Date(time));
+        return vo;
+    }
+}
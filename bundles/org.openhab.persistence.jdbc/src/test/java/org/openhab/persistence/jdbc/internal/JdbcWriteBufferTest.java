@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+import org.openhab.persistence.jdbc.model.ItemVO;
+
+/**
+ *
+ * @author agent - Initial contribution
+ *
+ */
+public class JdbcWriteBufferTest {
+
+    @Test
+    public void testDropOnOverflow() {
+        StubMapper mapper = new StubMapper(true);
+        JdbcWriteBuffer buffer = new JdbcWriteBuffer(mapper, config(2, "drop"));
+
+        assertTrue(buffer.offer(value("item0001", 1000)));
+        assertTrue(buffer.offer(value("item0001", 2000)));
+        assertFalse(buffer.offer(value("item0001", 3000)));
+        assertEquals(1, buffer.getDroppedCount());
+
+        buffer.stop();
+        assertEquals(2, mapper.stored.size());
+        assertEquals(2, buffer.getWrittenCount());
+    }
+
+    @Test
+    public void testBlockOnOverflow() throws InterruptedException {
+        StubMapper mapper = new StubMapper(true);
+        JdbcWriteBuffer buffer = new JdbcWriteBuffer(mapper, config(1, "block"));
+        assertTrue(buffer.offer(value("item0001", 1000)));
+
+        AtomicBoolean offered = new AtomicBoolean();
+        Thread producer = new Thread(() -> offered.set(buffer.offer(value("item0001", 2000))));
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+
+        // stop drains the queue, which unblocks the producer, and waits for its offer
+        buffer.stop();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        assertTrue(offered.get());
+        assertEquals(0, buffer.getDroppedCount());
+        assertEquals(2, mapper.stored.size());
+    }
+
+    @Test
+    public void testStopFlushesAllOffered() {
+        StubMapper mapper = new StubMapper(true);
+        JdbcWriteBuffer buffer = new JdbcWriteBuffer(mapper, config(1000, "drop"));
+        buffer.start();
+        for (int i = 0; i < 300; i++) {
+            assertTrue(buffer.offer(value("item000" + (i % 3), i * 1000L)));
+        }
+        buffer.stop();
+
+        assertFalse(buffer.isRunning());
+        assertFalse(buffer.offer(value("item0001", 1000000)));
+        assertEquals(0, buffer.getQueueSize());
+        assertEquals(300, mapper.stored.size());
+        assertEquals(300, buffer.getWrittenCount());
+    }
+
+    @Test
+    public void testSameTimeWrittenOnce() {
+        StubMapper mapper = new StubMapper(true);
+        JdbcWriteBuffer buffer = new JdbcWriteBuffer(mapper, config(10, "drop"));
+        ItemVO first = value("item0001", 1000);
+        ItemVO last = value("item0001", 1000);
+        buffer.offer(first);
+        buffer.offer(last);
+        buffer.offer(value("item0002", 1000));
+        buffer.stop();
+
+        assertEquals(2, mapper.stored.size());
+        assertTrue(mapper.stored.contains(last));
+        assertFalse(mapper.stored.contains(first));
+    }
+
+    @Test
+    public void testFailedBatchHandedToSpool() {
+        StubMapper mapper = new StubMapper(false);
+        JdbcWriteBuffer buffer = new JdbcWriteBuffer(mapper, config(10, "drop"));
+        buffer.offer(value("item0001", 1000));
+        buffer.offer(value("item0002", 1000));
+        buffer.stop();
+
+        assertEquals(2, mapper.spooled.size());
+        assertEquals(0, buffer.getWrittenCount());
+        assertEquals(2, buffer.getDroppedCount());
+    }
+
+    private static JdbcConfiguration config(int capacity, String overflowPolicy) {
+        Map<Object, Object> configuration = new HashMap<>();
+        configuration.put("url", "jdbc:derby:./target/testDerby;create=true");
+        configuration.put("batchSize", "50");
+        configuration.put("batchFlushInterval", "100");
+        configuration.put("batchQueueCapacity", String.valueOf(capacity));
+        configuration.put("batchOverflowPolicy", overflowPolicy);
+        return new JdbcConfiguration(configuration);
+    }
+
+    private static ItemVO value(String tableName, long time) {
+        ItemVO vo = new ItemVO(tableName, null);
+        vo.setTime(new Date(time));
+        vo.setValue(time / 1000.0);
+        return vo;
+    }
+
+    /**
+     * Records the values written, or fails every write and counts all spooled values as lost.
+     */
+    private static class StubMapper extends JdbcMapper {
+        final List<ItemVO> stored = Collections.synchronizedList(new ArrayList<>());
+        final List<ItemVO> spooled = Collections.synchronizedList(new ArrayList<>());
+        private final boolean succeed;
+
+        StubMapper(boolean succeed) {
+            this.succeed = succeed;
+        }
+
+        @Override
+        public boolean storeItemValues(String tableName, List<ItemVO> vol) {
+            if (succeed) {
+                stored.addAll(vol);
+            }
+            return succeed;
+        }
+
+        @Override
+        protected int spoolItemValues(List<ItemVO> vol) {
+            spooled.addAll(vol);
+            return vol.size();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.ZonedDateTime;
+
+import org.junit.Test;
+import org.openhab.core.library.types.DateTimeType;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.OpenClosedType;
+import org.openhab.core.library.types.PercentType;
+import org.openhab.core.library.types.StringType;
+
+/**
+ *
+ * @author agent - Initial contribution
+ *
+ */
+public class JdbcValueCodecTest {
+
+    @Test
+    public void testOfNumberBySqlType() {
+        assertEquals(JdbcValueCodec.NUMBER_DOUBLE, JdbcValueCodec.of("NUMBERITEM", "DOUBLE"));
+        assertEquals(JdbcValueCodec.NUMBER_DOUBLE, JdbcValueCodec.of("NUMBERITEM", "double precision"));
+        assertEquals(JdbcValueCodec.NUMBER_DECIMAL, JdbcValueCodec.of("NUMBERITEM", "DECIMAL(15,3)"));
+        assertEquals(JdbcValueCodec.NUMBER_INTEGER, JdbcValueCodec.of("NUMBERITEM", "BIGINT"));
+        assertEquals(JdbcValueCodec.NUMBER_STRING, JdbcValueCodec.of("NUMBERITEM", "VARCHAR(20)"));
+        assertEquals(JdbcValueCodec.NUMBER_STRING, JdbcValueCodec.of("NUMBERITEM", null));
+    }
+
+    @Test
+    public void testOfOtherItemTypes() {
+        assertEquals(JdbcValueCodec.PERCENT, JdbcValueCodec.of("DIMMERITEM", "TINYINT"));
+        assertEquals(JdbcValueCodec.PERCENT, JdbcValueCodec.of("ROLLERSHUTTERITEM", "TINYINT"));
+        assertEquals(JdbcValueCodec.DATETIME, JdbcValueCodec.of("DATETIMEITEM", "TIMESTAMP"));
+        assertEquals(JdbcValueCodec.SWITCH, JdbcValueCodec.of("SWITCHITEM", "VARCHAR(6)"));
+        assertEquals(JdbcValueCodec.CONTACT, JdbcValueCodec.of("CONTACTITEM", "VARCHAR(6)"));
+        assertEquals(JdbcValueCodec.COLOR, JdbcValueCodec.of("COLORITEM", "VARCHAR(70)"));
+        assertEquals(JdbcValueCodec.STRING, JdbcValueCodec.of("STRINGITEM", "VARCHAR(65500)"));
+    }
+
+    @Test
+    public void testToValue() {
+        assertEquals(21.5, JdbcValueCodec.NUMBER_DOUBLE.toValue(new DecimalType("21.5")));
+        assertEquals(new BigDecimal("21.5"), JdbcValueCodec.NUMBER_DECIMAL.toValue(new DecimalType("21.5")));
+        assertEquals(21, JdbcValueCodec.NUMBER_INTEGER.toValue(new DecimalType("21")));
+        assertEquals(40, JdbcValueCodec.PERCENT.toValue(new PercentType(40)));
+        assertEquals("ON", JdbcValueCodec.SWITCH.toValue(OnOffType.ON));
+        assertEquals("text", JdbcValueCodec.STRING.toValue(new StringType("text")));
+    }
+
+    @Test
+    public void testToStateOfDriverTypes() {
+        assertEquals(new DecimalType("21.5"), JdbcValueCodec.NUMBER_DOUBLE.toState(21.5));
+        assertEquals(new DecimalType("21.5"), JdbcValueCodec.NUMBER_DOUBLE.toState("21.5"));
+        assertEquals(new DecimalType("21.5"), JdbcValueCodec.NUMBER_DECIMAL.toState(new BigDecimal("21.5")));
+        assertEquals(new DecimalType("21"), JdbcValueCodec.NUMBER_INTEGER.toState(21L));
+        assertEquals(new PercentType(40), JdbcValueCodec.PERCENT.toState(40));
+        assertEquals(OnOffType.OFF, JdbcValueCodec.SWITCH.toState("OFF "));
+        assertEquals(OpenClosedType.OPEN, JdbcValueCodec.CONTACT.toState("OPEN"));
+        assertEquals(new StringType("text"), JdbcValueCodec.STRING.toState("text"));
+    }
+
+    @Test
+    public void testDateTimeRoundTrip() {
+        DateTimeType state = new DateTimeType(ZonedDateTime.now().withNano(0));
+        Timestamp value = (Timestamp) JdbcValueCodec.DATETIME.toValue(state);
+        assertEquals(state.getZonedDateTime().toInstant(),
+                ((DateTimeType) JdbcValueCodec.DATETIME.toState(value)).getZonedDateTime().toInstant());
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.time.LocalDateTime;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author agent - Initial contribution
+ *
+ */
+public class PartitionIntervalTest {
+
+    private static final LocalDateTime TIME = LocalDateTime.of(2026, 10, 17, 13, 45, 10);
+
+    @Test
+    public void testPeriodStart() {
+        assertEquals(LocalDateTime.of(2026, 10, 17, 0, 0), PartitionInterval.DAY.periodStart(TIME));
+        assertEquals(LocalDateTime.of(2026, 10, 1, 0, 0), PartitionInterval.MONTH.periodStart(TIME));
+    }
+
+    @Test
+    public void testNextAcrossYear() {
+        assertEquals(LocalDateTime.of(2027, 1, 1, 0, 0),
+                PartitionInterval.DAY.next(LocalDateTime.of(2026, 12, 31, 0, 0)));
+        assertEquals(LocalDateTime.of(2027, 1, 1, 0, 0),
+                PartitionInterval.MONTH.next(LocalDateTime.of(2026, 12, 1, 0, 0)));
+    }
+
+    @Test
+    public void testFormat() {
+        assertEquals("20261017", PartitionInterval.DAY.format(PartitionInterval.DAY.periodStart(TIME)));
+        assertEquals("202610", PartitionInterval.MONTH.format(PartitionInterval.MONTH.periodStart(TIME)));
+    }
+
+    @Test
+    public void testPeriodEnd() {
+        assertEquals(LocalDateTime.of(2026, 10, 18, 0, 0), PartitionInterval.periodEnd("20261017"));
+        assertEquals(LocalDateTime.of(2026, 11, 1, 0, 0), PartitionInterval.periodEnd("202610"));
+    }
+
+    @Test
+    public void testPeriodEndOfForeignName() {
+        assertNull(PartitionInterval.periodEnd("202613"));
+        assertNull(PartitionInterval.periodEnd("2026"));
+        assertNull(PartitionInterval.periodEnd("abcdef"));
+    }
+}
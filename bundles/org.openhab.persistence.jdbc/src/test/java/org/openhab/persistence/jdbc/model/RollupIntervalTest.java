@@ -0,0 +1,49 @@
+/**
+ * Copyright (c) 2010-2020 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.persistence.jdbc.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author agent - Initial contribution
+ *
+ */
+public class RollupIntervalTest {
+
+    @Test
+    public void testParseUnits() {
+        assertEquals(300, RollupInterval.parse("5m").getSeconds());
+        assertEquals(3600, RollupInterval.parse("1h").getSeconds());
+        assertEquals(86400, RollupInterval.parse("1d").getSeconds());
+    }
+
+    @Test
+    public void testParseNormalizesSuffix() {
+        RollupInterval r = RollupInterval.parse(" 15M ");
+        assertEquals("15m", r.getSuffix());
+        assertEquals(900, r.getSeconds());
+    }
+
+    @Test
+    public void testParseInvalid() {
+        assertNull(RollupInterval.parse("0m"));
+        assertNull(RollupInterval.parse("5s"));
+        assertNull(RollupInterval.parse("m"));
+        assertNull(RollupInterval.parse("12345m"));
+        assertNull(RollupInterval.parse(""));
+    }
+}